@@ -0,0 +1,418 @@
+package org.quark.ogame.roi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import org.observe.config.ObservableConfig;
+import org.observe.config.SyncValueSet;
+import org.observe.util.TypeTokens;
+import org.qommons.Transaction;
+import org.qommons.ValueHolder;
+import org.qommons.tree.BetterTreeList;
+import org.quark.ogame.OGameUtils;
+import org.quark.ogame.uni.Account;
+import org.quark.ogame.uni.AccountClass;
+import org.quark.ogame.uni.AccountUpgradeType;
+import org.quark.ogame.uni.AllianceClass;
+import org.quark.ogame.uni.OGameEconomyRuleSet;
+import org.quark.ogame.uni.OGameEconomyRuleSet.ProductionBuffer;
+import org.quark.ogame.uni.OGameRuleSet;
+import org.quark.ogame.uni.Planet;
+import org.quark.ogame.uni.ResourceType;
+import org.quark.ogame.uni.versions.OGameRuleSets;
+
+/**
+ * A self-contained micro-benchmark harness for the economy and ROI engines, run against synthetic accounts so that the numbers are
+ * comparable between machines and over time. Each benchmark is warmed up, then timed over several fixed-length iterations, and the
+ * results are printed as CSV. Full sequence generation is far slower than the other benchmarks, so it is only run against the smaller
+ * accounts, and each of its iterations is a single run.
+ *
+ * <p>
+ * Usage: <code>RoiBenchmark [options]</code>
+ * </p>
+ * <ul>
+ * <li><b>--planets=</b>Comma-separated planet counts of the synthetic accounts (default 1,8,15,20)</li>
+ * <li><b>--rules=</b>Comma-separated names of the rule sets to benchmark (default: all {@link OGameRuleSets#ALL supported} ones)</li>
+ * <li><b>--filter=</b>Only run benchmarks whose names contain this text</li>
+ * <li><b>--warmup=</b>The number of warmup iterations (default 3)</li>
+ * <li><b>--iterations=</b>The number of measured iterations (default 5)</li>
+ * <li><b>--time=</b>The minimum length of each iteration in milliseconds (default 500)</li>
+ * <li><b>--sequence-planets=</b>The largest planet count to run the full sequence generation benchmark for (default 8)</li>
+ * <li><b>--sequence-iterations=</b>The number of measured runs of the full sequence generation benchmark, after a single warmup run
+ * (default 2)</li>
+ * <li><b>--no-sequence</b>Skip the full sequence generation benchmark</li>
+ * </ul>
+ */
+public class RoiBenchmark {
+	/** Results are summed into this so that the JIT cannot eliminate the benchmarked code */
+	static volatile long theSink;
+
+	/** The result of a benchmark */
+	public static class Result {
+		public final String ruleSet;
+		public final int planets;
+		public final String benchmark;
+		public final long operations;
+		public final double meanNanos;
+		public final double minNanos;
+		public final double maxNanos;
+
+		Result(String ruleSet, int planets, String benchmark, long operations, double meanNanos, double minNanos, double maxNanos) {
+			this.ruleSet = ruleSet;
+			this.planets = planets;
+			this.benchmark = benchmark;
+			this.operations = operations;
+			this.meanNanos = meanNanos;
+			this.minNanos = minNanos;
+			this.maxNanos = maxNanos;
+		}
+
+		@Override
+		public String toString() {
+			return ruleSet + "," + planets + "," + benchmark + "," + operations + "," + Math.round(meanNanos) + "," + Math.round(minNanos)
+				+ "," + Math.round(maxNanos);
+		}
+	}
+
+	private int theWarmup = 3;
+	private int theIterations = 5;
+	private long theIterationNanos = 500_000_000L;
+	private String theFilter;
+	private boolean isSequenceIncluded = true;
+	private int theSequencePlanets = 8;
+	private int theSequenceIterations = 2;
+
+	public RoiBenchmark setWarmup(int warmup) {
+		theWarmup = warmup;
+		return this;
+	}
+
+	public RoiBenchmark setIterations(int iterations) {
+		theIterations = iterations;
+		return this;
+	}
+
+	public RoiBenchmark setIterationMillis(long millis) {
+		theIterationNanos = millis * 1_000_000L;
+		return this;
+	}
+
+	public RoiBenchmark setFilter(String filter) {
+		theFilter = filter;
+		return this;
+	}
+
+	public RoiBenchmark setSequenceIncluded(boolean sequence) {
+		isSequenceIncluded = sequence;
+		return this;
+	}
+
+	public RoiBenchmark setSequencePlanets(int planets) {
+		theSequencePlanets = planets;
+		return this;
+	}
+
+	public RoiBenchmark setSequenceIterations(int iterations) {
+		theSequenceIterations = iterations;
+		return this;
+	}
+
+	/**
+	 * Runs all the benchmarks for a rule set against a synthetic account
+	 *
+	 * @param rules The rule set to benchmark
+	 * @param planets The number of planets for the synthetic account
+	 * @param results Receives the result of each benchmark as it finishes
+	 */
+	public void run(OGameRuleSet rules, int planets, Consumer<Result> results) {
+		Account account = createAccount(planets);
+		OGameEconomyRuleSet eco = rules.economy();
+		ProductionBuffer buffer = new ProductionBuffer();
+		ResourceType[] resources = ResourceType.values();
+
+		measure(rules, planets, "economy.getProduction", results, () -> {
+			long total = 0;
+			for (Planet planet : account.getPlanets().getValues()) {
+				for (ResourceType resource : resources) {
+					total += eco.getProduction(account, planet, resource, 1).totalNet;
+				}
+			}
+			return total;
+		});
+		measure(rules, planets, "economy.getProduction(buffer)", results, () -> {
+			long total = 0;
+			for (Planet planet : account.getPlanets().getValues()) {
+				for (ResourceType resource : resources) {
+					total += eco.getProduction(account, planet, resource, 1, buffer).getTotalNet();
+				}
+			}
+			return total;
+		});
+		measure(rules, planets, "economy.getFullProduction", results, () -> {
+			long total = 0;
+			for (Planet planet : account.getPlanets().getValues()) {
+				total += eco.getFullProduction(account, planet, buffer).metal;
+			}
+			return total;
+		});
+		AccountUpgradeType[] upgrades = { AccountUpgradeType.MetalMine, AccountUpgradeType.CrystalMine,
+			AccountUpgradeType.DeuteriumSynthesizer, AccountUpgradeType.RoboticsFactory, AccountUpgradeType.Plasma,
+			AccountUpgradeType.Astrophysics, AccountUpgradeType.Crawler };
+		measure(rules, planets, "economy.getUpgradeCost", results, () -> {
+			long total = 0;
+			for (Planet planet : account.getPlanets().getValues()) {
+				for (AccountUpgradeType upgrade : upgrades) {
+					int level = upgrade.getLevel(account, planet);
+					total += eco.getUpgradeCost(account, planet, upgrade, level, level + 1).getMetal();
+				}
+			}
+			return total;
+		});
+		measure(rules, planets, "OGameUtils.optimizeEnergy", results, () -> {
+			long total = 0;
+			for (Planet planet : account.getPlanets().getValues()) {
+				total += OGameUtils.optimizeEnergy(account, planet, eco, buffer).metal;
+			}
+			return total;
+		});
+
+		RoiSequenceGenerator generator = new RoiSequenceGenerator(rules, account);
+		RoiAccount roiAccount = new RoiAccount(generator, account);
+		roiAccount.getProduction(); // Compute and cache the production of each planet outside of the benchmarked branches
+		long production = Math.max(1, roiAccount.getProduction());
+		measure(rules, planets, "RoiAccount.branch", results, () -> {
+			try (Transaction branch = roiAccount.branch()) {
+				roiAccount.upgrade(AccountUpgradeType.RoboticsFactory, roiAccount.roiPlanets().getFirst(), 1);
+				return roiAccount.roiPlanets().getFirst().getRoboticsFactory();
+			}
+		});
+		measure(rules, planets, "RoiAccount.spend+advance", results, () -> {
+			try (Transaction branch = roiAccount.branch()) {
+				roiAccount.spend(production * 5);
+				roiAccount.advance(roiAccount.getTime() + 3_600);
+				return roiAccount.getHolding();
+			}
+		});
+		measure(rules, planets, "RoiAccount.snapshot+restore", results, () -> {
+			RoiAccount.Snapshot snapshot = roiAccount.snapshot();
+			roiAccount.restore(snapshot);
+			return snapshot.getTime();
+		});
+
+		if (isSequenceIncluded && planets <= theSequencePlanets) {
+			measure(rules, planets, "RoiSequenceGenerator.produceSequence", 1, theSequenceIterations, 0, results, () -> {
+				RoiSequenceGenerator seqGen = new RoiSequenceGenerator(rules, account);
+				seqGen.getTargetPlanet().set(planets + 1, null);
+				BetterTreeList<RoiSequenceCoreElement> sequence = new BetterTreeList<>(false);
+				seqGen.produceSequence(sequence);
+				return sequence.size();
+			});
+		}
+	}
+
+	private void measure(OGameRuleSet rules, int planets, String name, Consumer<Result> results, LongSupplier op) {
+		measure(rules, planets, name, theWarmup, theIterations, theIterationNanos, results, op);
+	}
+
+	private void measure(OGameRuleSet rules, int planets, String name, int warmup, int iterations, long iterationNanos,
+		Consumer<Result> results, LongSupplier op) {
+		if (theFilter != null && !name.contains(theFilter)) {
+			return;
+		}
+		for (int i = 0; i < warmup; i++) {
+			runIteration(op, iterationNanos);
+		}
+		long totalOps = 0;
+		long totalNanos = 0;
+		double min = Double.MAX_VALUE, max = 0;
+		for (int i = 0; i < iterations; i++) {
+			long[] iteration = runIteration(op, iterationNanos);
+			totalOps += iteration[0];
+			totalNanos += iteration[1];
+			double perOp = iteration[1] * 1.0 / iteration[0];
+			min = Math.min(min, perOp);
+			max = Math.max(max, perOp);
+		}
+		results.accept(new Result(rules.getName(), planets, name, totalOps, totalNanos * 1.0 / totalOps, min, max));
+	}
+
+	/** @return The number of operations run and the number of nanoseconds they took */
+	private static long[] runIteration(LongSupplier op, long iterationNanos) {
+		long sink = 0;
+		long ops = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			sink += op.getAsLong();
+			ops++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < iterationNanos);
+		theSink += sink;
+		return new long[] { ops, elapsed };
+	}
+
+	/**
+	 * Creates a synthetic, reasonably developed account that is not backed by any file
+	 *
+	 * @param planets The number of planets for the account
+	 * @return The new account
+	 */
+	public static Account createAccount(int planets) {
+		ObservableConfig config = ObservableConfig.createRoot("occountant");
+		ValueHolder<SyncValueSet<Account>> accounts = new ValueHolder<>();
+		config.asValue(TypeTokens.get().of(Account.class)).at("accounts/account").buildEntitySet(accounts);
+		Account account = accounts.get().create()//
+			.with(Account::getName, "Benchmark " + planets)//
+			.with(Account::getId, planets)//
+			.create().get();
+		account.getUniverse().setName("Benchmark");
+		account.getUniverse().setCollectorProductionBonus(25);
+		account.getUniverse().setCollectorEnergyBonus(10);
+		account.getUniverse().setCrawlerCap(8);
+		account.getUniverse().setEconomySpeed(1);
+		account.getUniverse().setResearchSpeed(1);
+		account.getUniverse().setFleetSpeed(1);
+		account.getUniverse().setHyperspaceCargoBonus(5);
+		account.getUniverse().getTradeRatios().setMetal(2.5);
+		account.getUniverse().getTradeRatios().setCrystal(1.5);
+		account.getUniverse().getTradeRatios().setDeuterium(1);
+		account.getUniverse().setGalaxies(9).setCircularGalaxies(true).setCircularUniverse(true);
+		account.setGameClass(AccountClass.Collector);
+		account.setAllianceClass(AllianceClass.Trader);
+
+		account.getResearch().setEnergy(12);
+		account.getResearch().setLaser(10);
+		account.getResearch().setIon(5);
+		account.getResearch().setHyperspace(8);
+		account.getResearch().setPlasma(12);
+		account.getResearch().setCombustionDrive(10);
+		account.getResearch().setImpulseDrive(8);
+		account.getResearch().setHyperspaceDrive(6);
+		account.getResearch().setEspionage(8);
+		account.getResearch().setComputer(12);
+		// Just enough astrophysics for the planets
+		account.getResearch().setAstrophysics(Math.max(0, planets * 2 - 3));
+		account.getResearch().setIntergalacticResearchNetwork(Math.max(0, planets / 2 - 1));
+
+		for (int i = 0; i < planets; i++) {
+			Planet planet = account.getPlanets().create()//
+				.with(Planet::getName, "Planet " + (i + 1))//
+				.with(Planet::getBaseFields, 180 + (i % 5) * 10)//
+				.with(Planet::getMetalUtilization, 100)//
+				.with(Planet::getCrystalUtilization, 100)//
+				.with(Planet::getDeuteriumUtilization, 100)//
+				.with(Planet::getSolarPlantUtilization, 100)//
+				.with(Planet::getSolarSatelliteUtilization, 100)//
+				.with(Planet::getFusionReactorUtilization, 100)//
+				.with(Planet::getCrawlerUtilization, 100)//
+				.create().get();
+			planet.getCoordinates().set(1 + i % 9, 1 + i * 23 % 499, 4 + i % 12);
+			// Spread the temperatures over the slots, hot to cold
+			int temp = 110 - (4 + i % 12) * 10;
+			planet.setMinimumTemperature(temp - 20).setMaximumTemperature(temp + 20);
+			planet.setMetalMine(32 - i % 6).setCrystalMine(28 - i % 5).setDeuteriumSynthesizer(26 - i % 4);
+			planet.setSolarPlant(24).setFusionReactor(i % 3 == 0 ? 16 : 0);
+			planet.setMetalStorage(10).setCrystalStorage(9).setDeuteriumStorage(8);
+			planet.setRoboticsFactory(10).setShipyard(10).setResearchLab(i < 8 ? 12 : 6);
+			planet.setNaniteFactory(i < 4 ? 4 : 2);
+			planet.setCrawlers((planet.getMetalMine() + planet.getCrystalMine() + planet.getDeuteriumSynthesizer()) * 6);
+			planet.setSolarSatellites(i % 3 == 0 ? 0 : 150);
+		}
+		return account;
+	}
+
+	private static List<OGameRuleSet> getRuleSets(String names) {
+		if (names == null) {
+			return OGameRuleSets.ALL;
+		}
+		List<OGameRuleSet> ruleSets = new ArrayList<>();
+		for (String name : names.split(",")) {
+			OGameRuleSet found = null;
+			for (OGameRuleSet ruleSet : OGameRuleSets.ALL) {
+				if (ruleSet.getName().equals(name.trim())) {
+					found = ruleSet;
+					break;
+				}
+			}
+			if (found == null) {
+				throw new IllegalArgumentException("Unrecognized rule set: " + name);
+			}
+			ruleSets.add(found);
+		}
+		return ruleSets;
+	}
+
+	/**
+	 * Runs the benchmarks from the command line
+	 *
+	 * @param args Command-line arguments, see {@link RoiBenchmark}
+	 */
+	public static void main(String[] args) {
+		RoiBenchmark benchmark = new RoiBenchmark();
+		int[] planetCounts = { 1, 8, 15, 20 };
+		List<OGameRuleSet> ruleSets;
+		String ruleSetNames = null;
+		try {
+			for (String arg : args) {
+				int eq = arg.indexOf('=');
+				String name = eq < 0 ? arg : arg.substring(0, eq);
+				String value = eq < 0 ? null : arg.substring(eq + 1);
+				switch (name) {
+				case "--planets":
+					String[] split = value.split(",");
+					planetCounts = new int[split.length];
+					for (int i = 0; i < split.length; i++) {
+						planetCounts[i] = Integer.parseInt(split[i].trim());
+					}
+					break;
+				case "--rules":
+					ruleSetNames = value;
+					break;
+				case "--filter":
+					benchmark.setFilter(value);
+					break;
+				case "--warmup":
+					benchmark.setWarmup(Integer.parseInt(value));
+					break;
+				case "--iterations":
+					benchmark.setIterations(Integer.parseInt(value));
+					break;
+				case "--time":
+					benchmark.setIterationMillis(Long.parseLong(value));
+					break;
+				case "--sequence-planets":
+					benchmark.setSequencePlanets(Integer.parseInt(value));
+					break;
+				case "--sequence-iterations":
+					benchmark.setSequenceIterations(Integer.parseInt(value));
+					break;
+				case "--no-sequence":
+					benchmark.setSequenceIncluded(false);
+					break;
+				default:
+					throw new IllegalArgumentException("Unrecognized argument: " + arg);
+				}
+			}
+			ruleSets = getRuleSets(ruleSetNames);
+		} catch (NullPointerException | NumberFormatException e) {
+			System.err.println("Bad argument: " + e.getMessage());
+			System.exit(1);
+			return;
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+			return;
+		}
+		System.out.println("rules,planets,benchmark,operations,meanNanosPerOp,minNanosPerOp,maxNanosPerOp");
+		for (OGameRuleSet rules : ruleSets) {
+			for (int planets : planetCounts) {
+				benchmark.run(rules, planets, result -> {
+					System.out.println(result);
+					System.out.flush();
+				});
+			}
+		}
+	}
+}
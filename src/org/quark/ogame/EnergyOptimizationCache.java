@@ -0,0 +1,150 @@
+package org.quark.ogame;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.quark.ogame.uni.Account;
+import org.quark.ogame.uni.OGameEconomyRuleSet;
+import org.quark.ogame.uni.OGameEconomyRuleSet.FullProduction;
+import org.quark.ogame.uni.OGameEconomyRuleSet.ProductionBuffer;
+import org.quark.ogame.uni.Officers;
+import org.quark.ogame.uni.Planet;
+import org.quark.ogame.uni.ResourceType;
+import org.quark.ogame.uni.TradeRatios;
+import org.quark.ogame.uni.Universe;
+
+/**
+ * Memoizes {@link OGameUtils#optimizeEnergy(Account, Planet, OGameEconomyRuleSet, ProductionBuffer)} for an economy. Results are keyed by
+ * a signature of everything the optimization depends on: the planet's production buildings, satellites, crawlers, temperature, position,
+ * bonuses and fixed utilizations, along with the account's energy and plasma research, class, alliance class, officers and universe
+ * settings. Planets with the same configuration then share a single optimization.
+ *
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+public class EnergyOptimizationCache {
+	/** The default maximum number of optimizations to keep */
+	public static final int DEFAULT_MAX_SIZE = 250_000;
+
+	/** The result of an energy optimization */
+	public static class Optimization {
+		/** The production of the planet with the optimized utilizations */
+		public final FullProduction production;
+		/** The optimal fusion reactor utilization */
+		public final int fusionUtilization;
+		/** The optimal crawler utilization */
+		public final int crawlerUtilization;
+
+		Optimization(FullProduction production, int fusionUtilization, int crawlerUtilization) {
+			this.production = production;
+			this.fusionUtilization = fusionUtilization;
+			this.crawlerUtilization = crawlerUtilization;
+		}
+
+		@Override
+		public String toString() {
+			return production + " (fusion " + fusionUtilization + "%, crawlers " + crawlerUtilization + "%)";
+		}
+	}
+
+	private final OGameEconomyRuleSet theEconomy;
+	private final ConcurrentHashMap<Signature, Optimization> theCache;
+	private final int theMaxSize;
+
+	/** @param economy The economy to optimize with */
+	public EnergyOptimizationCache(OGameEconomyRuleSet economy) {
+		this(economy, DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * @param economy The economy to optimize with
+	 * @param maxSize The maximum number of optimizations to keep. The cache is cleared when it fills up.
+	 */
+	public EnergyOptimizationCache(OGameEconomyRuleSet economy, int maxSize) {
+		theEconomy = economy;
+		theCache = new ConcurrentHashMap<>();
+		theMaxSize = maxSize;
+	}
+
+	public OGameEconomyRuleSet getEconomy() {
+		return theEconomy;
+	}
+
+	/** @return The number of optimizations currently cached */
+	public int size() {
+		return theCache.size();
+	}
+
+	public void clear() {
+		theCache.clear();
+	}
+
+	/**
+	 * Sets the fusion and crawler utilization of a planet to produce the most resources, like
+	 * {@link OGameUtils#optimizeEnergy(Account, Planet, OGameEconomyRuleSet, ProductionBuffer)}, but only runs the optimization if an
+	 * identically-configured planet has not been optimized already
+	 *
+	 * @param account The account
+	 * @param planet The planet to optimize
+	 * @param buffer The buffer to use for the production calculations, if the optimization needs to be done
+	 * @return The optimization, which has been applied to the planet
+	 */
+	public Optimization optimize(Account account, Planet planet, ProductionBuffer buffer) {
+		Signature signature = new Signature(account, planet);
+		Optimization optimization = theCache.get(signature);
+		if (optimization != null) {
+			planet.setFusionReactorUtilization(optimization.fusionUtilization);
+			planet.setCrawlerUtilization(optimization.crawlerUtilization);
+		} else {
+			FullProduction production = OGameUtils.optimizeEnergy(account, planet, theEconomy, buffer);
+			optimization = new Optimization(production, planet.getFusionReactorUtilization(), planet.getCrawlerUtilization());
+			if (theCache.size() >= theMaxSize) {
+				theCache.clear();
+			}
+			theCache.putIfAbsent(signature, optimization);
+		}
+		return optimization;
+	}
+
+	/** Everything that can affect the energy optimization of a planet */
+	static class Signature {
+		private final long[] theValues;
+		private final int theHash;
+
+		Signature(Account account, Planet planet) {
+			Universe universe = account.getUniverse();
+			Officers officers = account.getOfficers();
+			TradeRatios tr = universe.getTradeRatios();
+			int officerBits = (officers.isCommander() ? 1 : 0) | (officers.isCommandingStaff() ? 2 : 0) | (officers.isAdmiral() ? 4 : 0)
+				| (officers.isEngineer() ? 8 : 0) | (officers.isGeologist() ? 16 : 0) | (officers.isTechnocrat() ? 32 : 0);
+			theValues = new long[] { //
+				planet.getMetalMine(), planet.getCrystalMine(), planet.getDeuteriumSynthesizer(), //
+				planet.getSolarPlant(), planet.getFusionReactor(), planet.getSolarSatellites(), planet.getCrawlers(), //
+				planet.getMinimumTemperature(), planet.getMaximumTemperature(), planet.getCoordinates().getSlot(), //
+				planet.getBonus(ResourceType.Metal), planet.getBonus(ResourceType.Crystal), planet.getBonus(ResourceType.Deuterium),
+				planet.getBonus(ResourceType.Energy), //
+				planet.getMetalUtilization(), planet.getCrystalUtilization(), planet.getDeuteriumUtilization(),
+				planet.getSolarPlantUtilization(), planet.getSolarSatelliteUtilization(), //
+				account.getResearch().getEnergy(), account.getResearch().getPlasma(), //
+				account.getGameClass() == null ? -1 : account.getGameClass().ordinal(),
+				account.getAllianceClass() == null ? -1 : account.getAllianceClass().ordinal(), officerBits, //
+				universe.getEconomySpeed(), universe.getCollectorProductionBonus(), universe.getCollectorEnergyBonus(),
+				universe.getCrawlerCap(), //
+				Double.doubleToLongBits(tr.getMetal()), Double.doubleToLongBits(tr.getCrystal()),
+				Double.doubleToLongBits(tr.getDeuterium()) };
+			theHash = Arrays.hashCode(theValues);
+		}
+
+		@Override
+		public int hashCode() {
+			return theHash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Signature && theHash == ((Signature) obj).theHash
+				&& Arrays.equals(theValues, ((Signature) obj).theValues);
+		}
+	}
+}
@@ -9,10 +9,8 @@ import org.qommons.io.Format;
 import org.quark.ogame.uni.Account;
 import org.quark.ogame.uni.OGameEconomyRuleSet;
 import org.quark.ogame.uni.OGameEconomyRuleSet.FullProduction;
-import org.quark.ogame.uni.OGameEconomyRuleSet.Production;
-import org.quark.ogame.uni.OGameEconomyRuleSet.ProductionSource;
+import org.quark.ogame.uni.OGameEconomyRuleSet.ProductionBuffer;
 import org.quark.ogame.uni.Planet;
-import org.quark.ogame.uni.ResourceType;
 import org.quark.ogame.uni.ShipyardItemType;
 import org.quark.ogame.uni.TradeRatios;
 import org.quark.ogame.uni.Utilizable;
@@ -94,48 +92,42 @@ public class OGameUtils {
 		throw new IllegalStateException("Unrecognized ship: " + type);
 	}
 
+	/**
+	 * @param account The account
+	 * @param planet The planet
+	 * @param economy The economy to use
+	 * @return The number of solar satellites the planet needs to have non-negative energy, or -1 if satellites cannot do it
+	 * @see OGameEconomyRuleSet#getRequiredSatellites(Account, Planet, int)
+	 */
 	public static int getRequiredSatellites(Account account, Planet planet, OGameEconomyRuleSet economy) {
-		Production energy = economy.getProduction(account, planet, ResourceType.Energy, 1);
-		int energyNeeded = -energy.totalNet + energy.byType.get(ProductionSource.Satellite);
-		int newSats;
-		if (energyNeeded < 0) {
-			newSats = 0;
-		} else {
-			int satEnergy = economy.getSatelliteEnergy(account, planet);
-			if (satEnergy <= 0) {
-				return -1;
-			}
-			newSats = (int) Math.ceil(energyNeeded * 1.0 / satEnergy);
-			int preSats = planet.getSolarSatellites();
-			planet.setSolarSatellites(newSats);
-			int energyExcess = economy.getProduction(account, planet, ResourceType.Energy, 1).totalNet;
-			if (energyExcess > satEnergy) {
-				// Bonuses like for Collector or Officers can bump this up
-				int removeSats = (int) Math.floor(energyExcess * 1.0 / (energyExcess + energyNeeded) * newSats);
-				newSats -= removeSats;
-				planet.setSolarSatellites(newSats);
-				energyExcess = economy.getProduction(account, planet, ResourceType.Energy, 1).totalNet;
-				if (energyExcess < 0) {
-					newSats++;
-				}
-			}
-			planet.setSolarSatellites(preSats);
-		}
-		return newSats;
+		return economy.getRequiredSatellites(account, planet, 0);
 	}
 
 	public static FullProduction optimizeEnergy(Account account, Planet planet, OGameEconomyRuleSet economy) {
+		return optimizeEnergy(account, planet, economy, new ProductionBuffer());
+	}
+
+	/**
+	 * Sets the fusion and crawler utilization of a planet to produce the most resources
+	 * 
+	 * @param account The account
+	 * @param planet The planet to optimize
+	 * @param economy The economy to use
+	 * @param buffer The buffer to use for the production calculations
+	 * @return The production of the planet with the optimized utilization
+	 */
+	public static FullProduction optimizeEnergy(Account account, Planet planet, OGameEconomyRuleSet economy, ProductionBuffer buffer) {
 		int maxFusion = economy.getMaxUtilization(Utilizable.FusionReactor, account, planet);
 		int maxCrawler = economy.getMaxUtilization(Utilizable.Crawler, account, planet);
 		planet.setFusionReactorUtilization(maxFusion);
 		planet.setCrawlerUtilization(maxCrawler);
 		// Find the fusion/crawler utilization combination with the best production
-		BiTuple<FullProduction, Double> bestProduction = optimizeCrawlerUtil(account, planet, economy);
+		BiTuple<FullProduction, Double> bestProduction = optimizeCrawlerUtil(account, planet, economy, buffer);
 		if (planet.getFusionReactor() > 0) {
 			for (int f = maxFusion - 10; f >= 0; f -= 10) {
 				int preCrawlerUtil = planet.getCrawlerUtilization();
 				planet.setFusionReactorUtilization(f);
-				BiTuple<FullProduction, Double> production = optimizeCrawlerUtil(account, planet, economy);
+				BiTuple<FullProduction, Double> production = optimizeCrawlerUtil(account, planet, economy, buffer);
 				if (production.getValue2() < bestProduction.getValue2()) {
 					planet.setFusionReactorUtilization(f + 10);
 					planet.setCrawlerUtilization(preCrawlerUtil);
@@ -148,7 +140,8 @@ public class OGameUtils {
 		return bestProduction.getValue1();
 	}
 
-	private static BiTuple<FullProduction, Double> optimizeCrawlerUtil(Account account, Planet planet, OGameEconomyRuleSet eco) {
+	private static BiTuple<FullProduction, Double> optimizeCrawlerUtil(Account account, Planet planet, OGameEconomyRuleSet eco,
+		ProductionBuffer buffer) {
 		int maxCrawler = eco.getMaxUtilization(Utilizable.Crawler, account, planet);
 		double[] productions = new double[maxCrawler / 10 + 1];
 		FullProduction[] fullProductions = new FullProduction[productions.length];
@@ -157,21 +150,21 @@ public class OGameUtils {
 		int best = ArrayUtils.binarySearch(0, productions.length, util -> {
 			if (Double.isNaN(productions[util])) {
 				planet.setCrawlerUtilization(util * 10);
-				fullProductions[util] = eco.getFullProduction(account, planet);
-				productions[util] = fullProductions[util].asCost().getMetalValue(tr);
+				fullProductions[util] = eco.getFullProduction(account, planet, buffer);
+				productions[util] = fullProductions[util].getMetalValue(tr);
 			}
 			if (util > 0 && Double.isNaN(productions[util - 1])) {
 				planet.setCrawlerUtilization((util - 1) * 10);
-				fullProductions[util - 1] = eco.getFullProduction(account, planet);
-				productions[util - 1] = fullProductions[util - 1].asCost().getMetalValue(tr);
+				fullProductions[util - 1] = eco.getFullProduction(account, planet, buffer);
+				productions[util - 1] = fullProductions[util - 1].getMetalValue(tr);
 				if (productions[util - 1] > productions[util]) {
 					return -1;
 				}
 			}
 			if (util < productions.length - 1 && Double.isNaN(productions[util + 1])) {
 				planet.setCrawlerUtilization((util + 1) * 10);
-				fullProductions[util + 1] = eco.getFullProduction(account, planet);
-				productions[util + 1] = fullProductions[util + 1].asCost().getMetalValue(tr);
+				fullProductions[util + 1] = eco.getFullProduction(account, planet, buffer);
+				productions[util + 1] = fullProductions[util + 1].getMetalValue(tr);
 				if (productions[util + 1] > productions[util]) {
 					return 1;
 				}
@@ -0,0 +1,119 @@
+package org.quark.ogame.roi;
+
+import java.util.Arrays;
+
+/**
+ * Determines how many offspring each surviving mutation produces in a round of the {@link RoiSequenceGenerator}'s mutation optimizer.
+ * Mutations are ranked best-first. Mutations that improved on the previous round's best get {@link #getImproverOffspring()} offspring.
+ * The others are divided into consecutive tiers, each with its own offspring count, with {@link #getDefaultOffspring()} for all
+ * mutations ranked below the last tier.
+ */
+public class ReproductionSchedule {
+	/** The schedule that was hard-coded into the optimizer originally */
+	public static final ReproductionSchedule DEFAULT = new ReproductionSchedule(15, new int[] { 10, 10, 10, 10 }, new int[] { 8, 6, 4, 3 },
+		2);
+
+	private final int theImproverOffspring;
+	private final int[] theTierSizes;
+	private final int[] theTierOffspring;
+	private final int theDefaultOffspring;
+
+	/**
+	 * @param improverOffspring The number of offspring for mutations that improved on the previous best
+	 * @param tierSizes The number of mutations in each tier
+	 * @param tierOffspring The number of offspring for each mutation in each tier
+	 * @param defaultOffspring The number of offspring for mutations ranked below all tiers
+	 */
+	public ReproductionSchedule(int improverOffspring, int[] tierSizes, int[] tierOffspring, int defaultOffspring) {
+		if (tierSizes.length != tierOffspring.length) {
+			throw new IllegalArgumentException("Tier sizes and offspring must have the same length");
+		}
+		theImproverOffspring = improverOffspring;
+		theTierSizes = tierSizes.clone();
+		theTierOffspring = tierOffspring.clone();
+		theDefaultOffspring = defaultOffspring;
+	}
+
+	public int getImproverOffspring() {
+		return theImproverOffspring;
+	}
+
+	public int getDefaultOffspring() {
+		return theDefaultOffspring;
+	}
+
+	/**
+	 * @param rank The rank of the mutation in the population, 0 for the best
+	 * @param improved Whether the mutation improved on the previous round's best
+	 * @return The number of offspring the mutation should produce
+	 */
+	public int getOffspring(int rank, boolean improved) {
+		if (improved) {
+			return theImproverOffspring;
+		}
+		int tierEnd = 0;
+		for (int t = 0; t < theTierSizes.length; t++) {
+			tierEnd += theTierSizes[t];
+			if (rank < tierEnd) {
+				return theTierOffspring[t];
+			}
+		}
+		return theDefaultOffspring;
+	}
+
+	/**
+	 * Parses a schedule in the format produced by {@link #toString()}, e.g. "15:8x10,6x10,4x10,3x10,2"
+	 *
+	 * @param text The text to parse
+	 * @return The parsed schedule
+	 * @throws IllegalArgumentException If the text cannot be parsed
+	 */
+	public static ReproductionSchedule parse(String text) throws IllegalArgumentException {
+		int colon = text.indexOf(':');
+		if (colon < 0) {
+			throw new IllegalArgumentException("Expected <improver offspring>:<offspring>x<tier size>,...,<default offspring>: " + text);
+		}
+		try {
+			int improver = Integer.parseInt(text.substring(0, colon).trim());
+			String[] tiers = text.substring(colon + 1).split(",");
+			int[] sizes = new int[tiers.length - 1];
+			int[] offspring = new int[tiers.length - 1];
+			for (int t = 0; t < tiers.length - 1; t++) {
+				int x = tiers[t].indexOf('x');
+				if (x < 0) {
+					throw new IllegalArgumentException("Expected <offspring>x<tier size>: " + tiers[t]);
+				}
+				offspring[t] = Integer.parseInt(tiers[t].substring(0, x).trim());
+				sizes[t] = Integer.parseInt(tiers[t].substring(x + 1).trim());
+			}
+			int def = Integer.parseInt(tiers[tiers.length - 1].trim());
+			return new ReproductionSchedule(improver, sizes, offspring, def);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Bad reproduction schedule: " + text, e);
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return theImproverOffspring * 31 + Arrays.hashCode(theTierSizes) * 17 + Arrays.hashCode(theTierOffspring) + theDefaultOffspring;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof ReproductionSchedule)) {
+			return false;
+		}
+		ReproductionSchedule other = (ReproductionSchedule) obj;
+		return theImproverOffspring == other.theImproverOffspring && Arrays.equals(theTierSizes, other.theTierSizes)
+			&& Arrays.equals(theTierOffspring, other.theTierOffspring) && theDefaultOffspring == other.theDefaultOffspring;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder().append(theImproverOffspring).append(':');
+		for (int t = 0; t < theTierSizes.length; t++) {
+			str.append(theTierOffspring[t]).append('x').append(theTierSizes[t]).append(',');
+		}
+		return str.append(theDefaultOffspring).toString();
+	}
+}
@@ -1,5 +1,6 @@
 package org.quark.ogame.roi;
 
+import java.util.Arrays;
 import java.util.function.Function;
 import java.util.function.ToIntFunction;
 
@@ -12,7 +13,6 @@ import org.qommons.BreakpointHere;
 import org.qommons.Nameable;
 import org.qommons.Transaction;
 import org.qommons.collect.QuickSet.QuickMap;
-import org.quark.ogame.OGameUtils;
 import org.quark.ogame.uni.Account;
 import org.quark.ogame.uni.AccountClass;
 import org.quark.ogame.uni.AccountUpgradeType;
@@ -28,6 +28,7 @@ import org.quark.ogame.uni.Coordinate;
 import org.quark.ogame.uni.Holding;
 import org.quark.ogame.uni.Moon;
 import org.quark.ogame.uni.OGameEconomyRuleSet.FullProduction;
+import org.quark.ogame.uni.OGameEconomyRuleSet.ProductionBuffer;
 import org.quark.ogame.uni.Officers;
 import org.quark.ogame.uni.Planet;
 import org.quark.ogame.uni.PlannedFlight;
@@ -44,21 +45,169 @@ import com.google.common.reflect.TypeToken;
 
 public class RoiAccount implements Account {
 	static class AccountStatus {
+		private static final long[] NO_COMPLETIONS = new long[0];
+		private static final int[] NO_ITEMS = new int[0];
+		private static final long[] NO_PLANETS = new long[0];
+
 		long theTime;
 		long theHoldings;
-		long theNextUpgradeCompletion;
 		int planetCount;
-
-		AccountStatus() {}
+		/** The sum of the production values of all planets whose production is not dirty */
+		long theProduction;
+		/** A bit set of the positions of planets whose production needs to be recomputed */
+		long[] theDirtyPlanets;
+		int theDirtyCount;
+		/**
+		 * The completion times of the account's in-progress upgrades, kept as a binary min-heap so that the next completion is always at
+		 * index 0
+		 */
+		long[] theCompletions;
+		/** The {@link UpgradableAccountItem#theTimelineIndex timeline index} of the item for each entry in {@link #theCompletions} */
+		int[] theCompletionItems;
+		int theCompletionCount;
+
+		AccountStatus() {
+			theCompletions = NO_COMPLETIONS;
+			theCompletionItems = NO_ITEMS;
+			theDirtyPlanets = NO_PLANETS;
+		}
 
 		AccountStatus(AccountStatus copy) {
-			theTime = copy.theTime;
-			theHoldings = copy.theHoldings;
-			theNextUpgradeCompletion = copy.theNextUpgradeCompletion;
-			planetCount = copy.planetCount;
+			this();
+			copyFrom(copy);
+		}
+
+		void copyFrom(AccountStatus source) {
+			theTime = source.theTime;
+			theHoldings = source.theHoldings;
+			planetCount = source.planetCount;
+			if (theCompletions.length < source.theCompletionCount) {
+				theCompletions = new long[source.theCompletions.length];
+				theCompletionItems = new int[source.theCompletions.length];
+			}
+			System.arraycopy(source.theCompletions, 0, theCompletions, 0, source.theCompletionCount);
+			System.arraycopy(source.theCompletionItems, 0, theCompletionItems, 0, source.theCompletionCount);
+			theCompletionCount = source.theCompletionCount;
+			theProduction = source.theProduction;
+			if (theDirtyPlanets.length != source.theDirtyPlanets.length) {
+				theDirtyPlanets = source.theDirtyPlanets.clone();
+			} else {
+				System.arraycopy(source.theDirtyPlanets, 0, theDirtyPlanets, 0, theDirtyPlanets.length);
+			}
+			theDirtyCount = source.theDirtyCount;
+		}
+
+		boolean isDirty(int planet) {
+			int word = planet >>> 6;
+			return word < theDirtyPlanets.length && (theDirtyPlanets[word] & (1L << planet)) != 0;
+		}
+
+		void setDirty(int planet) {
+			int word = planet >>> 6;
+			if (word >= theDirtyPlanets.length) {
+				theDirtyPlanets = Arrays.copyOf(theDirtyPlanets, word + 1);
+			}
+			theDirtyPlanets[word] |= 1L << planet;
+			theDirtyCount++;
+		}
+
+		void clearDirty(int planet) {
+			theDirtyPlanets[planet >>> 6] &= ~(1L << planet);
+			theDirtyCount--;
+		}
+
+		/**
+		 * Marks the production of all planets dirty
+		 * 
+		 * @param planets The number of planets in the account
+		 */
+		void dirtyAll(int planets) {
+			int words = (planets + 63) >>> 6;
+			if (theDirtyPlanets.length < words) {
+				theDirtyPlanets = new long[words];
+			}
+			Arrays.fill(theDirtyPlanets, 0);
+			for (int w = 0; w < words; w++) {
+				int bits = Math.min(64, planets - w * 64);
+				theDirtyPlanets[w] = bits == 64 ? -1L : (1L << bits) - 1;
+			}
+			theDirtyCount = planets;
+			theProduction = 0;
+		}
+
+		/** @return The position of the first planet whose production is dirty, or -1 if there are none */
+		int getFirstDirty() {
+			if (theDirtyCount == 0) {
+				return -1;
+			}
+			for (int w = 0; w < theDirtyPlanets.length; w++) {
+				if (theDirtyPlanets[w] != 0) {
+					return w * 64 + Long.numberOfTrailingZeros(theDirtyPlanets[w]);
+				}
+			}
+			return -1;
+		}
+
+		/** @return The time of the next upgrade completion, or 0 if no upgrades are in progress */
+		long getNextCompletion() {
+			return theCompletionCount == 0 ? 0 : theCompletions[0];
+		}
+
+		void addCompletion(long time, int item) {
+			if (theCompletionCount == theCompletions.length) {
+				int newLength = Math.max(4, theCompletionCount * 2);
+				theCompletions = Arrays.copyOf(theCompletions, newLength);
+				theCompletionItems = Arrays.copyOf(theCompletionItems, newLength);
+			}
+			int i = theCompletionCount++;
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (theCompletions[parent] <= time) {
+					break;
+				}
+				theCompletions[i] = theCompletions[parent];
+				theCompletionItems[i] = theCompletionItems[parent];
+				i = parent;
+			}
+			theCompletions[i] = time;
+			theCompletionItems[i] = item;
+		}
+
+		/** @return The timeline index of the item whose completion was removed */
+		int removeNextCompletion() {
+			int item = theCompletionItems[0];
+			int last = --theCompletionCount;
+			long time = theCompletions[last];
+			int lastItem = theCompletionItems[last];
+			int i = 0;
+			int child;
+			while ((child = i * 2 + 1) < last) {
+				if (child + 1 < last && theCompletions[child + 1] < theCompletions[child]) {
+					child++;
+				}
+				if (time <= theCompletions[child]) {
+					break;
+				}
+				theCompletions[i] = theCompletions[child];
+				theCompletionItems[i] = theCompletionItems[child];
+				i = child;
+			}
+			if (last > 0) {
+				theCompletions[i] = time;
+				theCompletionItems[i] = lastItem;
+			}
+			return item;
 		}
 	}
 
+	/** Returned by {@link RoiAccount#getTimeOffset(Snapshot)} when the account's state does not match the snapshot */
+	public static final long NO_OFFSET = Long.MIN_VALUE;
+	/**
+	 * Whether to verify the upgrade completion timeline against every item after each modification. This scans the entire account, so
+	 * it's only for debugging.
+	 */
+	private static final boolean DEBUG_TIMELINE = false;
+
 	private final RoiSequenceGenerator theSequence;
 	private final Account theTarget;
 	private final RoiResearch theResearch;
@@ -66,14 +215,56 @@ public class RoiAccount implements Account {
 
 	private BranchStack<AccountStatus> theStatus;
 	private long theBranch;
+	private final ProductionBuffer theProductionBuffer = new ProductionBuffer();
+
+	/**
+	 * An immutable record of the state of an account at a point in its simulation. The state is shared with the account (and any other
+	 * account the snapshot is {@link RoiAccount#restore(Snapshot) restored} into) and only copied when one of them modifies it, so
+	 * snapshots are cheap to take and may be used from any thread.
+	 * 
+	 * @see RoiAccount#snapshot()
+	 * @see RoiAccount#restore(Snapshot)
+	 * @see RoiAccount#fork(Snapshot)
+	 * @see RoiAccount#getTimeOffset(Snapshot)
+	 */
+	public static class Snapshot {
+		final Account target;
+		final AccountStatus status;
+		final UpgradeItemStatus<ResearchType> research;
+		/** The planet, planet structures, moon, and moon structures status for each planet */
+		final UpgradeItemStatus<?>[] bodies;
+
+		Snapshot(Account target, AccountStatus status, UpgradeItemStatus<ResearchType> research, UpgradeItemStatus<?>[] bodies) {
+			this.target = target;
+			this.status = status;
+			this.research = research;
+			this.bodies = bodies;
+		}
+
+		public long getTime() {
+			return status.theTime;
+		}
+
+		static boolean matches(UpgradeItemStatus<?> checkpoint, UpgradeItemStatus<?> status, long offset) {
+			if (status.upgrade != checkpoint.upgrade || status.amount != checkpoint.amount) {
+				return false;
+			} else if (status instanceof PlanetStatus && (((PlanetStatus) status).fusionUtil != ((PlanetStatus) checkpoint).fusionUtil
+				|| ((PlanetStatus) status).crawlerUtil != ((PlanetStatus) checkpoint).crawlerUtil)) {
+				return false;
+			} else if (checkpoint.completion == 0 ? status.completion != 0 : status.completion - checkpoint.completion != offset) {
+				return false;
+			}
+			return Arrays.equals(checkpoint.theLevels, status.theLevels);
+		}
+	}
 
 	public RoiAccount(RoiSequenceGenerator sequence, Account target) {
 		theSequence = sequence;
 		theTarget = target;
 		theResearch = new RoiResearch();
-		thePlanets = new RoiValueSet<>(RoiPlanet.class, i -> new RoiPlanet(null, i + 1));
+		thePlanets = new RoiValueSet<>(RoiPlanet.class, this::createPlanet);
 		for (Planet targetPlanet : target.getPlanets().getValues()) {
-			thePlanets.getValues().add(new RoiPlanet(targetPlanet, 0));
+			thePlanets.getValues().add(new RoiPlanet(targetPlanet, 0, thePlanets.getValues().size()));
 		}
 		theStatus = new BranchStack<AccountStatus>(new AccountStatus()) {
 			@Override
@@ -83,10 +274,7 @@ public class RoiAccount implements Account {
 
 			@Override
 			void copyValue(AccountStatus source, AccountStatus dest) {
-				dest.theTime = source.theTime;
-				dest.theHoldings = source.theHoldings;
-				dest.theNextUpgradeCompletion = source.theNextUpgradeCompletion;
-				dest.planetCount = source.planetCount;
+				dest.copyFrom(source);
 			}
 		};
 		reset();
@@ -111,16 +299,127 @@ public class RoiAccount implements Account {
 		return theStatus.get().theTime;
 	}
 
+	/**
+	 * @return A snapshot of the current state of this account
+	 * @see #restore(Snapshot)
+	 */
+	public Snapshot snapshot() {
+		int planets = thePlanets.getValues().size();
+		UpgradeItemStatus<?>[] bodies = new UpgradeItemStatus[planets * 4];
+		int i = 0;
+		for (RoiPlanet planet : thePlanets.getValues()) {
+			bodies[i++] = planet.share();
+			bodies[i++] = planet.getStationaryStructures().share();
+			bodies[i++] = planet.getMoon().share();
+			bodies[i++] = planet.getMoon().getStationaryStructures().share();
+		}
+		return new Snapshot(theTarget, theStatus.share(), theResearch.share(), bodies);
+	}
+
+	/**
+	 * Puts this account into the state captured by a snapshot, discarding its current state entirely. After this, {@link #reset()} will
+	 * still put this account back into the state of the target account, not the snapshot.
+	 * 
+	 * @param snapshot The snapshot to restore
+	 * @throws IllegalArgumentException If the snapshot was not taken from an account for the same target account
+	 * @throws IllegalStateException If this account has any open {@link #branch() branches}
+	 */
+	public void restore(Snapshot snapshot) throws IllegalArgumentException, IllegalStateException {
+		if (snapshot.target != theTarget) {
+			throw new IllegalArgumentException("Snapshot is for a different account");
+		} else if (theBranch != 0) {
+			throw new IllegalStateException("Cannot restore a snapshot inside a branch");
+		}
+		int planets = snapshot.bodies.length / 4;
+		while (thePlanets.getValues().size() > planets) {
+			thePlanets.getValues().removeLast();
+		}
+		while (thePlanets.getValues().size() < planets) {
+			thePlanets.newValue();
+		}
+		// Restore the status after creating planets, since new planets mark themselves dirty and the snapshot knows better
+		theStatus.restore(snapshot.status);
+		theResearch.restore(snapshot.research);
+		int i = 0;
+		for (RoiPlanet planet : thePlanets.getValues()) {
+			planet.restore(snapshot.bodies[i++]);
+			planet.getStationaryStructures().restore(snapshot.bodies[i++]);
+			planet.getMoon().restore(snapshot.bodies[i++]);
+			planet.getMoon().getStationaryStructures().restore(snapshot.bodies[i++]);
+		}
+	}
+
+	/**
+	 * @param snapshot The snapshot to fork
+	 * @return A new account for the same target as this one, in the state captured by the snapshot
+	 */
+	public RoiAccount fork(Snapshot snapshot) {
+		RoiAccount fork = new RoiAccount(theSequence, theTarget);
+		fork.restore(snapshot);
+		return fork;
+	}
+
+	/**
+	 * Creates a new colony. Its production is marked dirty so that it is computed and added into the account's total before it is used.
+	 * 
+	 * @param position The position of the new planet in the account
+	 * @return The new planet
+	 */
+	private RoiPlanet createPlanet(int position) {
+		RoiPlanet planet = new RoiPlanet(null, position + 1, position);
+		planet.dirtyProduction();
+		return planet;
+	}
+
+	/**
+	 * @param snapshot The snapshot to compare against
+	 * @return The amount of time by which this account is ahead of the snapshot if this account's state is identical to the snapshot's
+	 *         except for time (i.e. this account will proceed exactly as the snapshotted account did, just offset in time), or
+	 *         {@link #NO_OFFSET} otherwise
+	 */
+	public long getTimeOffset(Snapshot snapshot) {
+		AccountStatus status = theStatus.get();
+		if (status.theHoldings != snapshot.status.theHoldings || status.planetCount != snapshot.status.planetCount
+			|| thePlanets.getValues().size() * 4 != snapshot.bodies.length) {
+			return NO_OFFSET;
+		}
+		long offset = status.theTime - snapshot.status.theTime;
+		long snapshotNext = snapshot.status.getNextCompletion();
+		if (snapshotNext == 0 ? status.getNextCompletion() != 0 : status.getNextCompletion() - snapshotNext != offset) {
+			return NO_OFFSET;
+		}
+		if (!Snapshot.matches(snapshot.research, theResearch.getItemStatus(false), offset)) {
+			return NO_OFFSET;
+		}
+		int i = 0;
+		for (RoiPlanet planet : thePlanets.getValues()) {
+			if (!Snapshot.matches(snapshot.bodies[i++], planet.getItemStatus(false), offset)//
+				|| !Snapshot.matches(snapshot.bodies[i++], planet.getStationaryStructures().getItemStatus(false), offset)//
+				|| !Snapshot.matches(snapshot.bodies[i++], planet.getMoon().getItemStatus(false), offset)//
+				|| !Snapshot.matches(snapshot.bodies[i++], planet.getMoon().getStationaryStructures().getItemStatus(false), offset)) {
+				return NO_OFFSET;
+			}
+		}
+		return offset;
+	}
+
 	public long getHolding() {
 		return theStatus.get().theHoldings;
 	}
 
+	/** @return The total production value of all this account's planets */
 	public long getProduction() {
-		long production = 0;
-		for (RoiPlanet planet : roiPlanets()) {
-			production += planet.getProductionValue();
+		int dirty = theStatus.get().getFirstDirty();
+		while (dirty >= 0) {
+			thePlanets.getValues().get(dirty).optimizeEnergy();
+			dirty = theStatus.get().getFirstDirty();
 		}
-		return production;
+		return theStatus.get().theProduction;
+	}
+
+	/** Marks the production of every planet dirty, for changes that affect all planets */
+	private void dirtyAllProduction() {
+		theStatus.getForUpdate(theBranch).dirtyAll(thePlanets.getValues().size());
 	}
 
 	/**
@@ -179,23 +478,27 @@ public class RoiAccount implements Account {
 			return;
 		}
 		long finishTime = theStatus.get().theTime + duration;
+		UpgradableAccountItem<?> item;
 		if (type.research != null) {
 			theResearch.start(type.research, amount, finishTime);
+			item = theResearch;
 		} else {
-			body.start(type, amount, finishTime);
-		}
-		if (theStatus.get().theNextUpgradeCompletion == 0 || finishTime < theStatus.get().theNextUpgradeCompletion) {
-			theStatus.getForUpdate(theBranch).theNextUpgradeCompletion = finishTime;
+			item = body.start(type, amount, finishTime);
 		}
+		theStatus.getForUpdate(theBranch).addCompletion(finishTime, item.theTimelineIndex);
 		debugCheckUpgradeCompletion();
 	}
 
 	/** Resets all upgrades done to this account, including {@link #flush() flushed} ones */
 	public void reset() {
 		theStatus.reset();
+		AccountStatus status = theStatus.getForUpdate(0);
+		status.theTime = 0;
+		status.theHoldings = 0;
+		status.theCompletionCount = 0;
 		theResearch.reset();
 		int maxPlanets = theSequence.getRules().economy().getMaxPlanets(this);
-		theStatus.get().planetCount = maxPlanets;
+		status.planetCount = maxPlanets;
 		while (thePlanets.getValues().size() > theStatus.get().planetCount) {
 			thePlanets.getValues().removeLast();
 		}
@@ -205,11 +508,12 @@ public class RoiAccount implements Account {
 		while (thePlanets.getValues().size() < maxPlanets) {
 			thePlanets.newValue();
 		}
+		status.dirtyAll(thePlanets.getValues().size());
 		debugCheckUpgradeCompletion();
 	}
 
 	public long getNextUpgradeCompletion() {
-		return theStatus.get().theNextUpgradeCompletion;
+		return theStatus.get().getNextCompletion();
 	}
 
 	public void advance(long time) {
@@ -219,29 +523,66 @@ public class RoiAccount implements Account {
 			return;
 		}
 		AccountStatus status = theStatus.getForUpdate(theBranch);
-		while (status.theNextUpgradeCompletion > 0 && time >= status.theNextUpgradeCompletion) {
-			long next = status.theNextUpgradeCompletion;
-			status.theHoldings += getProduction() * ((next - status.theTime) / 3_600);
-			status.theNextUpgradeCompletion = 0;
-			theResearch.finishUpgradeTo(next);
-			for (RoiPlanet planet : thePlanets.getValues()) {
-				planet.finishUpgradeTo(next);
-			}
+		// Production only changes when an upgrade completes, so it only needs to be computed once between completions
+		long production = getProduction();
+		long next = status.getNextCompletion();
+		while (next > 0 && time >= next) {
+			status.theHoldings += production * ((next - status.theTime) / 3_600);
 			status.theTime = next;
+			finishUpgrades(status, next);
+			production = getProduction();
+			next = status.getNextCompletion();
 		}
 		if (time > status.theTime) {
-			status.theHoldings += getProduction() * ((time - status.theTime) / 3_600);
+			status.theHoldings += production * ((time - status.theTime) / 3_600);
 			status.theTime = time;
 		}
 		debugCheckUpgradeCompletion();
 	}
 
+	/**
+	 * Completes all upgrades that finish at or before the given time
+	 * 
+	 * @param status The status to remove the completions from
+	 * @param time The time to finish upgrades up to
+	 */
+	private void finishUpgrades(AccountStatus status, long time) {
+		while (status.theCompletionCount > 0 && status.theCompletions[0] <= time) {
+			getTimelineItem(status.removeNextCompletion()).finishUpgradeTo(time);
+		}
+	}
+
+	/**
+	 * @param timelineIndex The {@link UpgradableAccountItem#theTimelineIndex timeline index} of the item to get
+	 * @return The item in this account with the given timeline index
+	 */
+	UpgradableAccountItem<?> getTimelineItem(int timelineIndex) {
+		if (timelineIndex == 0) {
+			return theResearch;
+		}
+		RoiPlanet planet = thePlanets.getValues().get((timelineIndex - 1) / 4);
+		switch ((timelineIndex - 1) % 4) {
+		case 0:
+			return planet;
+		case 1:
+			return planet.getStationaryStructures();
+		case 2:
+			return planet.getMoon();
+		default:
+			return planet.getMoon().getStationaryStructures();
+		}
+	}
+
 	private void debugCheckUpgradeCompletion() {
+		if (!DEBUG_TIMELINE) {
+			return;
+		}
 		AccountStatus status = theStatus.get();
-		if (status.theNextUpgradeCompletion > 0 && status.theTime >= status.theNextUpgradeCompletion) {
+		long nextCompletion = status.getNextCompletion();
+		if (nextCompletion > 0 && status.theTime >= nextCompletion) {
 			BreakpointHere.breakpoint(); // DEBUG
 		}
-		if (status.theNextUpgradeCompletion < 0) {
+		if (nextCompletion == 0) {
 			if (theResearch.getUpgradeCompletion() > 0) {
 				BreakpointHere.breakpoint();
 			}
@@ -257,20 +598,20 @@ public class RoiAccount implements Account {
 				}
 			}
 		} else {
-			if (theResearch.getUpgradeCompletion() > 0 && theResearch.getUpgradeCompletion() < status.theNextUpgradeCompletion) {
+			if (theResearch.getUpgradeCompletion() > 0 && theResearch.getUpgradeCompletion() < nextCompletion) {
 				BreakpointHere.breakpoint();
 			}
 			for (RoiPlanet planet : roiPlanets()) {
-				if (planet.getUpgradeCompletion() > 0 && planet.getUpgradeCompletion() < status.theNextUpgradeCompletion) {
+				if (planet.getUpgradeCompletion() > 0 && planet.getUpgradeCompletion() < nextCompletion) {
 					BreakpointHere.breakpoint();
 				} else if (planet.getStationaryStructures().getUpgradeCompletion() > 0
-					&& planet.getStationaryStructures().getUpgradeCompletion() < status.theNextUpgradeCompletion) {
+					&& planet.getStationaryStructures().getUpgradeCompletion() < nextCompletion) {
 					BreakpointHere.breakpoint();
 				} else if (planet.getMoon().getUpgradeCompletion() > 0
-					&& planet.getMoon().getUpgradeCompletion() < status.theNextUpgradeCompletion) {
+					&& planet.getMoon().getUpgradeCompletion() < nextCompletion) {
 					BreakpointHere.breakpoint();
 				} else if (planet.getMoon().getStationaryStructures().getUpgradeCompletion() > 0
-					&& planet.getMoon().getStationaryStructures().getUpgradeCompletion() < status.theNextUpgradeCompletion) {
+					&& planet.getMoon().getStationaryStructures().getUpgradeCompletion() < nextCompletion) {
 					BreakpointHere.breakpoint();
 				}
 			}
@@ -286,13 +627,25 @@ public class RoiAccount implements Account {
 			status.theHoldings -= amount;
 			return;
 		}
-		long waitTime = Math.round((amount - status.theHoldings) * 3_600.0 / getProduction());
-		while (status.theNextUpgradeCompletion > 0 && status.theTime + waitTime > status.theNextUpgradeCompletion) {
-			advance(status.theNextUpgradeCompletion);
-			waitTime = Math.round((amount - status.theHoldings) * 3_600.0 / getProduction());
+		// Jump from completion to completion, only computing production when it changes,
+		// until the holdings can be paid off with the production rate at the time
+		long production = getProduction();
+		long waitTime = Math.round((amount - status.theHoldings) * 3_600.0 / production);
+		long next = status.getNextCompletion();
+		while (next > 0 && status.theTime + waitTime > next) {
+			status.theHoldings += production * ((next - status.theTime) / 3_600);
+			status.theTime = next;
+			finishUpgrades(status, next);
+			production = getProduction();
+			waitTime = Math.round((amount - status.theHoldings) * 3_600.0 / production);
+			next = status.getNextCompletion();
+		}
+		if (waitTime > 0) {
+			status.theTime += waitTime;
+			finishUpgrades(status, status.theTime);
 		}
-		advance(status.theTime + waitTime);
 		status.theHoldings = 0;
+		debugCheckUpgradeCompletion();
 	}
 
 	@Override
@@ -417,12 +770,19 @@ public class RoiAccount implements Account {
 			BranchStackElement<T> parent;
 			final long branch;
 			T value;
+			/** Whether the value is referenced by a {@link Snapshot} and so must not be modified */
+			boolean shared;
 
 			BranchStackElement(BranchStackElement<T> parent, long branch, T value) {
 				this.parent = parent;
 				this.branch = branch;
 				this.value = value;
 			}
+
+			BranchStackElement(BranchStackElement<T> parent, long branch, T value, boolean shared) {
+				this(parent, branch, value);
+				this.shared = shared;
+			}
 		}
 
 		BranchStackElement<T> theTop;
@@ -447,11 +807,24 @@ public class RoiAccount implements Account {
 			push(branch).value = value;
 		}
 
+		T share() {
+			theTop.shared = true;
+			return theTop.value;
+		}
+
+		void restore(T value) {
+			theTop = new BranchStackElement<>(null, 0, value, true);
+		}
+
 		private BranchStackElement<T> push(long branch) {
 			if (theTop.branch != branch) {
 				T newValue = createValue();
 				copyValue(theTop.value, newValue);
 				theTop = new BranchStackElement<>(theTop, branch, newValue);
+			} else if (theTop.shared) {
+				T newValue = createValue();
+				copyValue(theTop.value, newValue);
+				theTop = new BranchStackElement<>(theTop.parent, branch, newValue);
 			}
 			return theTop;
 		}
@@ -464,7 +837,15 @@ public class RoiAccount implements Account {
 
 		void flush(long branch) {
 			if (branch > 0 && theTop.branch == branch) {
-				copyValue(theTop.value, theTop.parent.value);
+				if (theTop.parent.branch != branch - 1) {
+					// The parent belongs to an older branch, which must not be affected by changes in this one
+					theTop = new BranchStackElement<>(theTop.parent, branch - 1, theTop.value, theTop.shared);
+				} else if (theTop.parent.shared) {
+					// The parent's value is in a snapshot, so replace it instead of modifying it
+					theTop = new BranchStackElement<>(theTop.parent.parent, branch - 1, theTop.value, theTop.shared);
+				} else {
+					copyValue(theTop.value, theTop.parent.value);
+				}
 			}
 		}
 
@@ -489,6 +870,11 @@ public class RoiAccount implements Account {
 	public abstract class UpgradableAccountItem<T extends Enum<T>> {
 		private final Class<T> theType;
 		protected final BranchStack<UpgradeItemStatus<T>> theItemStatus;
+		/**
+		 * Identifies this item in the account's upgrade completion timeline. 0 for research, then 4 per planet: the planet, its ships, its
+		 * moon, and its moon's ships. Indexes are used instead of references so that the timeline stays valid in {@link Snapshot}s.
+		 */
+		int theTimelineIndex;
 
 		UpgradableAccountItem(Class<T> type) {
 			theType = type;
@@ -528,13 +914,22 @@ public class RoiAccount implements Account {
 			theItemStatus.pop(branch);
 		}
 
+		UpgradeItemStatus<T> share() {
+			return theItemStatus.share();
+		}
+
+		void restore(UpgradeItemStatus<?> status) {
+			theItemStatus.restore((UpgradeItemStatus<T>) status);
+		}
+
 		void reset() {
 			theItemStatus.reset();
-			theItemStatus.get().upgrade = null;
-			theItemStatus.get().amount = 0;
-			theItemStatus.get().completion = 0;
-			for (int i = 0; i < theItemStatus.get().theLevels.length; i++) {
-				theItemStatus.get().theLevels[i]=getResetValue(theType.getEnumConstants()[i]);
+			UpgradeItemStatus<T> status = theItemStatus.getForUpdate(0);
+			status.upgrade = null;
+			status.amount = 0;
+			status.completion = 0;
+			for (int i = 0; i < status.theLevels.length; i++) {
+				status.theLevels[i] = getResetValue(theType.getEnumConstants()[i]);
 			}
 		}
 
@@ -552,15 +947,13 @@ public class RoiAccount implements Account {
 		}
 
 		void finishUpgradeTo(long time) {
-			AccountStatus acctStatus = theStatus.getForUpdate(theBranch);
-			UpgradeItemStatus<T> status = theItemStatus.getForUpdate(theBranch);
+			UpgradeItemStatus<T> status = theItemStatus.get();
+			// The upgrade may have been replaced by one that completes later, in which case the timeline will come back for it
 			if (status.upgrade != null && time >= status.completion) {
+				status = theItemStatus.getForUpdate(theBranch);
 				upgrade(status.upgrade, status.amount);
 				status.upgrade = null;
 				status.completion = 0;
-			} else if (status.completion > 0
-				&& (acctStatus.theNextUpgradeCompletion == 0 || status.completion < acctStatus.theNextUpgradeCompletion)) {
-				acctStatus.theNextUpgradeCompletion = status.completion;
 			}
 		}
 
@@ -613,15 +1006,14 @@ public class RoiAccount implements Account {
 			super.upgrade(type, upgrade);
 			switch (type) {
 			case Plasma:
-				for (RoiPlanet planet : roiPlanets()) {
-					planet.getItemStatus(true).productionDirty = true;
-				}
+			case Energy:
+				dirtyAllProduction();
 				break;
 			case Astrophysics:
 				int maxPlanets = theSequence.getRules().economy().getMaxPlanets(RoiAccount.this);
 				if (thePlanets.getValues().size() < maxPlanets) {
 					theStatus.getForUpdate(theBranch).planetCount = maxPlanets;
-					getPlanets().newValue();
+					thePlanets.newValue();
 				}
 				break;
 			default:
@@ -693,18 +1085,19 @@ public class RoiAccount implements Account {
 			}
 		}
 
-		void start(AccountUpgradeType type, int amount, long completion) {
+		UpgradableAccountItem<?> start(AccountUpgradeType type, int amount, long completion) {
 			if (type.shipyardItem != null) {
 				theShips.start(type.shipyardItem, amount, completion);
+				return theShips;
 			} else {
 				start(type.building, amount, completion);
+				return this;
 			}
 		}
 
-		@Override
-		void finishUpgradeTo(long time) {
-			super.finishUpgradeTo(time);
-			theShips.finishUpgradeTo(time);
+		void setTimelineIndex(int timelineIndex) {
+			theTimelineIndex = timelineIndex;
+			theShips.theTimelineIndex = timelineIndex + 1;
 		}
 
 		@Override
@@ -744,22 +1137,24 @@ public class RoiAccount implements Account {
 		long productionValue;
 		int fusionUtil;
 		int crawlerUtil;
-		boolean productionDirty;
 
 		PlanetStatus() {
 			super(BuildingType.values().length);
-			productionDirty = true;
 		}
 	}
 
 	public class RoiPlanet extends RoiRockyBody implements CondensedPlanet {
 		private final int thePlanetIndex;
+		private final int thePosition;
 		private final RoiMoon theMoon;
 
-		RoiPlanet(Planet target, int planetIndex) {
+		RoiPlanet(Planet target, int planetIndex, int position) {
 			super(target);
 			thePlanetIndex = planetIndex;
+			thePosition = position;
 			theMoon = new RoiMoon(target == null ? null : target.getMoon(), this);
+			setTimelineIndex(position * 4 + 1);
+			theMoon.setTimelineIndex(position * 4 + 3);
 			reset();
 		}
 
@@ -787,7 +1182,6 @@ public class RoiAccount implements Account {
 			pDst.productionValue = pSrc.productionValue;
 			pDst.fusionUtil = pSrc.fusionUtil;
 			pDst.crawlerUtil = pSrc.crawlerUtil;
-			pDst.productionDirty = pSrc.productionDirty;
 		}
 
 		@Override
@@ -799,7 +1193,7 @@ public class RoiAccount implements Account {
 			case DeuteriumSynthesizer:
 			case SolarPlant:
 			case FusionReactor:
-				getItemStatus(true).productionDirty = true;
+				dirtyProduction();
 				break;
 			default:
 			}
@@ -823,40 +1217,41 @@ public class RoiAccount implements Account {
 			theMoon.popBranch(branch);
 		}
 
-		@Override
-		void finishUpgradeTo(long time) {
-			super.finishUpgradeTo(time);
-			theMoon.finishUpgradeTo(time);
+		/** Recomputes this planet's (dirty) production and adds it back into the account's total */
+		void optimizeEnergy() {
+			PlanetStatus status = getItemStatus(true);
+			status.production = theSequence.getEnergyOptimizer().optimize(RoiAccount.this, this, theProductionBuffer).production;
+			status.productionValue = Math.round(status.production.getMetalValue(getUniverse().getTradeRatios()));
+			AccountStatus acctStatus = theStatus.getForUpdate(theBranch);
+			acctStatus.clearDirty(thePosition);
+			acctStatus.theProduction += status.productionValue;
 		}
 
-		private void optimizeEnergy() {
-			PlanetStatus status = getItemStatus(true);
-			status.production = OGameUtils.optimizeEnergy(RoiAccount.this, this, //
-				theSequence.getRules().economy());
-			status.productionValue = Math.round(status.production.asCost().getMetalValue(getUniverse().getTradeRatios()));
-			status.productionDirty = false;
+		public boolean isProductionDirty() {
+			return theStatus.get().isDirty(thePosition);
 		}
 
 		public FullProduction getProduction() {
-			PlanetStatus status = getItemStatus(false);
-			if (status.productionDirty) {
+			if (isProductionDirty()) {
 				optimizeEnergy();
-				status = getItemStatus(false);
 			}
-			return status.production;
+			return getItemStatus(false).production;
 		}
 
 		public long getProductionValue() {
-			PlanetStatus status = getItemStatus(false);
-			if (status.productionDirty) {
+			if (isProductionDirty()) {
 				optimizeEnergy();
-				status = getItemStatus(false);
 			}
-			return status.productionValue;
+			return getItemStatus(false).productionValue;
 		}
 
+		/** Marks this planet's production as needing to be recomputed, removing its stale value from the account's total */
 		void dirtyProduction() {
-			getItemStatus(true).productionDirty = true;
+			if (!isProductionDirty()) {
+				AccountStatus acctStatus = theStatus.getForUpdate(theBranch);
+				acctStatus.theProduction -= getItemStatus(false).productionValue;
+				acctStatus.setDirty(thePosition);
+			}
 		}
 
 		@Override
@@ -987,7 +1382,7 @@ public class RoiAccount implements Account {
 		public Planet setFusionReactorUtilization(int utilization) {
 			PlanetStatus status = getItemStatus(true);
 			status.fusionUtil = utilization;
-			status.productionDirty = true;
+			dirtyProduction();
 			return this;
 		}
 
@@ -1010,7 +1405,7 @@ public class RoiAccount implements Account {
 		public Planet setCrawlerUtilization(int utilization) {
 			PlanetStatus status = getItemStatus(true);
 			status.crawlerUtil = utilization;
-			status.productionDirty = true;
+			dirtyProduction();
 			return this;
 		}
 
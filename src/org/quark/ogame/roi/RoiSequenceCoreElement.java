@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import org.quark.ogame.uni.AccountUpgradeType;
 import org.quark.ogame.uni.UpgradeCost;
 
 public class RoiSequenceCoreElement extends RoiSequenceElement {
@@ -12,13 +13,40 @@ public class RoiSequenceCoreElement extends RoiSequenceElement {
 	private double theRoi;
 
 	public RoiSequenceCoreElement(RoiSequenceElement el) {
-		super(el.upgrade, el.planetIndex, false);
+		this(el.upgrade, el.planetIndex);
 		setTargetLevel(el.getTargetLevel(), el.getCost());
 		for (RoiSequenceElement dep : el.getDependencies()) {
 			withDependency(dep);
 		}
 	}
 
+	private RoiSequenceCoreElement(AccountUpgradeType upgrade, int planetIndex) {
+		super(upgrade, planetIndex, false);
+	}
+
+	/**
+	 * @return A deep copy of this element whose helpers, accessories and dependencies may be modified (e.g. have their times set by a
+	 *         simulation) independently of this element's, so that copies may be evaluated concurrently
+	 */
+	@Override
+	public RoiSequenceCoreElement copy() {
+		RoiSequenceCoreElement copy = new RoiSequenceCoreElement(upgrade, planetIndex);
+		copy.setTargetLevel(getTargetLevel(), getCost());
+		copyInto(copy);
+		if (thePostHelpers != null) {
+			for (RoiSequenceElement helper : thePostHelpers) {
+				copy.withPostHelper(helper.copy());
+			}
+		}
+		if (theAccessories != null) {
+			for (RoiSequenceElement helper : theAccessories) {
+				copy.withAccessory(helper.copy());
+			}
+		}
+		copy.theRoi = theRoi;
+		return copy;
+	}
+
 	@Override
 	RoiSequenceCoreElement setTargetLevel(int targetLevel, UpgradeCost cost) {
 		super.setTargetLevel(targetLevel, cost);
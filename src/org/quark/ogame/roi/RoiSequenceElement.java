@@ -63,6 +63,32 @@ public class RoiSequenceElement {
 		return cost;
 	}
 
+	/**
+	 * @return A deep copy of this element, with its own copies of its helpers and dependencies, so that simulating it does not touch this
+	 *         element
+	 */
+	public RoiSequenceElement copy() {
+		RoiSequenceElement copy = new RoiSequenceElement(upgrade, planetIndex, isMoon);
+		copy.setTargetLevel(theTargetLevel, theCost);
+		copyInto(copy);
+		return copy;
+	}
+
+	/** Copies this element's time and deep copies of its helpers and dependencies into a copy of it */
+	protected void copyInto(RoiSequenceElement copy) {
+		if (thePreHelpers != null) {
+			for (RoiSequenceElement helper : thePreHelpers) {
+				copy.withPreHelper(helper.copy());
+			}
+		}
+		if (theDependencies != null) {
+			for (RoiSequenceElement dep : theDependencies) {
+				copy.withDependency(dep.copy());
+			}
+		}
+		copy.setTime(theTime);
+	}
+
 	public List<RoiSequenceElement> getPreHelpers() {
 		return thePreHelpers == null ? Collections.emptyList() : Collections.unmodifiableList(thePreHelpers);
 	}
@@ -5,19 +5,22 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 import org.observe.ObservableValue;
 import org.observe.SettableValue;
 import org.qommons.ArrayUtils;
 import org.qommons.IntList;
-import org.qommons.QommonsUtils;
 import org.qommons.Transaction;
 import org.qommons.collect.BetterList;
 import org.qommons.collect.CollectionUtils;
@@ -26,6 +29,7 @@ import org.qommons.collect.StampedLockingStrategy;
 import org.qommons.threading.ElasticExecutor;
 import org.qommons.tree.BetterTreeList;
 import org.qommons.tree.BetterTreeSet;
+import org.quark.ogame.EnergyOptimizationCache;
 import org.quark.ogame.OGameUtils;
 import org.quark.ogame.roi.RoiAccount.RoiPlanet;
 import org.quark.ogame.roi.RoiAccount.RoiRockyBody;
@@ -35,6 +39,7 @@ import org.quark.ogame.uni.BuildingType;
 import org.quark.ogame.uni.Moon;
 import org.quark.ogame.uni.OGameEconomyRuleSet.FullProduction;
 import org.quark.ogame.uni.OGameEconomyRuleSet.Production;
+import org.quark.ogame.uni.OGameEconomyRuleSet.ProductionBuffer;
 import org.quark.ogame.uni.OGameEconomyRuleSet.ProductionSource;
 import org.quark.ogame.uni.OGameEconomyRuleSet.Requirement;
 import org.quark.ogame.uni.OGameRuleSet;
@@ -49,18 +54,21 @@ import org.quark.ogame.uni.Utilizable;
 public class RoiSequenceGenerator {
 	public static final int MIN_FUSION_PLANET = 5;
 	public static final Set<AccountUpgradeType> CORE_UPGRADES;
-	private static final boolean SUPER_OPTIMIZATION = false;
+	/** The number of sequence elements between the checkpoints recorded to speed up helper evaluation */
+	public static final int LIFETIME_CHECKPOINT_INTERVAL = 4;
 
 	static {
 		BetterList<AccountUpgradeType> upgrades = new BetterTreeList<>(false);
 		upgrades.with(//
 			AccountUpgradeType.MetalMine, AccountUpgradeType.CrystalMine, AccountUpgradeType.DeuteriumSynthesizer, //
 			AccountUpgradeType.Astrophysics, AccountUpgradeType.Plasma);
-		CORE_UPGRADES = Collections.unmodifiableSet(new HashSet<>(upgrades));
+		// EnumSet so that candidates are always evaluated in the same order
+		CORE_UPGRADES = Collections.unmodifiableSet(EnumSet.copyOf(upgrades));
 	}
 
 	private final OGameRuleSet theRules;
 	private final Account theAccount;
+	private final EnergyOptimizationCache theEnergyOptimizer;
 	private final SettableValue<Integer> theNewPlanetSlot;
 	private final SettableValue<Integer> theNewPlanetFields;
 	private final SettableValue<Integer> theNewPlanetTemp;
@@ -74,6 +82,15 @@ public class RoiSequenceGenerator {
 	private final DefenseRatios theDefenseRatio;
 	private final SettableValue<Boolean> isWithHoldingCargoes;
 	private final SettableValue<Boolean> isWithHarvestingCargoes;
+	private final SettableValue<Integer> theCoreThreads;
+
+	private final SettableValue<Boolean> isMutationOptimized;
+	private final SettableValue<Integer> theMutationPopulation;
+	private final SettableValue<Integer> theMutationRounds;
+	private final SettableValue<ReproductionSchedule> theReproductionSchedule;
+	private final SettableValue<Long> theMutationSeed;
+	private final SettableValue<Duration> theMutationBudget;
+	private final SettableValue<Integer> theMutationThreads;
 
 	private final SettableValue<String> theStatus;
 	private final SettableValue<Integer> theProgress;
@@ -85,6 +102,7 @@ public class RoiSequenceGenerator {
 	public RoiSequenceGenerator(OGameRuleSet rules, Account account) {
 		theRules = rules;
 		theAccount = account;
+		theEnergyOptimizer = new EnergyOptimizationCache(rules.economy());
 		StampedLockingStrategy locker = new StampedLockingStrategy(this);
 		isActive = SettableValue.build(boolean.class).withValue(false).withLock(locker).build();
 		ObservableValue<String> disabled = isActive.map(active -> active ? "Sequence is already being calculated" : null);
@@ -103,6 +121,17 @@ public class RoiSequenceGenerator {
 		theDefenseRatio = new DefenseRatios();
 		isWithHoldingCargoes = SettableValue.build(boolean.class).withValue(false).withLock(locker).build().disableWith(disabled);
 		isWithHarvestingCargoes = SettableValue.build(boolean.class).withValue(false).withLock(locker).build().disableWith(disabled);
+		theCoreThreads = SettableValue.build(int.class).withValue(1).withLock(locker).build().disableWith(disabled);
+
+		isMutationOptimized = SettableValue.build(boolean.class).withValue(false).withLock(locker).build().disableWith(disabled);
+		theMutationPopulation = SettableValue.build(int.class).withValue(100).withLock(locker).build().disableWith(disabled);
+		theMutationRounds = SettableValue.build(int.class).withValue(10).withLock(locker).build().disableWith(disabled);
+		theReproductionSchedule = SettableValue.build(ReproductionSchedule.class).withValue(ReproductionSchedule.DEFAULT).withLock(locker)
+			.build().disableWith(disabled);
+		theMutationSeed = SettableValue.build(Long.class).withLock(locker).build().disableWith(disabled);
+		theMutationBudget = SettableValue.build(Duration.class).withValue(Duration.ZERO).withLock(locker).build().disableWith(disabled);
+		theMutationThreads = SettableValue.build(int.class).withValue(Runtime.getRuntime().availableProcessors()).withLock(locker)
+			.build().disableWith(disabled);
 
 		theStatus = SettableValue.build(String.class).withLock(locker).build();
 		theProgress = SettableValue.build(Integer.class).withLock(locker).build();
@@ -113,6 +142,11 @@ public class RoiSequenceGenerator {
 		return theRules;
 	}
 
+	/** @return The energy optimization cache shared by all accounts simulated by this generator */
+	public EnergyOptimizationCache getEnergyOptimizer() {
+		return theEnergyOptimizer;
+	}
+
 	public Account getAccount() {
 		return theAccount;
 	}
@@ -161,6 +195,49 @@ public class RoiSequenceGenerator {
 		return isWithHarvestingCargoes;
 	}
 
+	/**
+	 * @return The number of threads to use to evaluate core upgrade candidates. If more than 1, each thread evaluates candidates on its
+	 *         own copy of the account.
+	 */
+	public SettableValue<Integer> getCoreThreads() {
+		return theCoreThreads;
+	}
+
+	/** @return Whether to run the genetic optimizer on the core sequence after the helpers have been added */
+	public SettableValue<Boolean> isMutationOptimized() {
+		return isMutationOptimized;
+	}
+
+	/** @return The number of mutations the optimizer keeps between rounds */
+	public SettableValue<Integer> getMutationPopulation() {
+		return theMutationPopulation;
+	}
+
+	/** @return The number of rounds of mutation the optimizer runs */
+	public SettableValue<Integer> getMutationRounds() {
+		return theMutationRounds;
+	}
+
+	/** @return How many offspring the optimizer produces from each surviving mutation */
+	public SettableValue<ReproductionSchedule> getReproductionSchedule() {
+		return theReproductionSchedule;
+	}
+
+	/** @return The seed for the optimizer's mutations, or null for a random seed */
+	public SettableValue<Long> getMutationSeed() {
+		return theMutationSeed;
+	}
+
+	/** @return The maximum wall-clock time to spend optimizing, or zero for no limit */
+	public SettableValue<Duration> getMutationBudget() {
+		return theMutationBudget;
+	}
+
+	/** @return The maximum number of threads to evaluate mutations with */
+	public SettableValue<Integer> getMutationThreads() {
+		return theMutationThreads;
+	}
+
 	public ObservableValue<String> isActive() {
 		return isActive.map(active -> active ? "Sequence is already being calculated" : null);
 	}
@@ -182,8 +259,9 @@ public class RoiSequenceGenerator {
 	}
 
 	public void init(RoiAccount account) {
+		ProductionBuffer buffer = new ProductionBuffer();
 		for (RoiPlanet planet : account.roiPlanets()) {
-			OGameUtils.optimizeEnergy(account, planet, theRules.economy());
+			theEnergyOptimizer.optimize(account, planet, buffer);
 		}
 	}
 
@@ -241,43 +319,68 @@ public class RoiSequenceGenerator {
 			 */
 
 			// First, lay out "core" production upgrades by ROI, assuming full energy supply and max crawlers
-			TradeRatios tr = theAccount.getUniverse().getTradeRatios();
+			int threads = theCoreThreads.get();
+			ForkJoinPool corePool = threads > 1 ? new ForkJoinPool(threads) : null;
+			// Accounts used by a single thread at a time to evaluate core upgrade candidates in parallel
+			ConcurrentLinkedQueue<RoiAccount> coreWorkers = corePool == null ? null : new ConcurrentLinkedQueue<>();
 			try (Transaction branch = copy.branch()) {
 				while (copy.roiPlanets().size() < theTargetPlanet.get()) {
 					if (isCanceled) {
 						return;
 					}
-					RoiSequenceCoreElement bestUpgradeEl = null;
 					long preProduction = copy.getProduction();
+					List<CoreCandidate> candidates = new ArrayList<>();
 					for (AccountUpgradeType upgrade : CORE_UPGRADES) {
-						if (isCanceled) {
-							return;
-						}
 						if (upgrade.research != null) {
-							try (Transaction branch2 = copy.branch()) {
-								RoiSequenceCoreElement upgradeEl = coreUpgrade(copy, -1, upgrade);
-								long postProduction = copy.getProduction();
-								if (postProduction > preProduction) {
-									double roi = upgradeEl.getTotalCost().getMetalValue(tr) / (postProduction - preProduction);
-									if (bestUpgradeEl == null || compareRoi(roi, bestUpgradeEl.getRoi()) > 0) {
-										bestUpgradeEl = upgradeEl.setRoi(roi);
-									}
-								}
-							}
+							candidates.add(new CoreCandidate(upgrade, -1));
 						} else {
 							// Find the best planet to upgrade
 							for (int i = 0; i < copy.roiPlanets().size(); i++) {
+								candidates.add(new CoreCandidate(upgrade, i));
+							}
+						}
+					}
+					RoiSequenceCoreElement[] results = new RoiSequenceCoreElement[candidates.size()];
+					if (corePool == null) {
+						for (int c = 0; c < results.length; c++) {
+							if (isCanceled) {
+								return;
+							}
+							results[c] = evaluateCoreCandidate(copy, candidates.get(c), preProduction);
+						}
+					} else {
+						RoiAccount.Snapshot coreState = copy.snapshot();
+						try {
+							corePool.submit(() -> IntStream.range(0, results.length).parallel().forEach(c -> {
 								if (isCanceled) {
 									return;
 								}
-								try (Transaction branch2 = copy.branch()) {
-									RoiSequenceCoreElement upgradeEl = coreUpgrade(copy, i, upgrade);
-									double planetRoi = upgradeEl.getRoi();
-									if (bestUpgradeEl == null || compareRoi(planetRoi, bestUpgradeEl.getRoi()) > 0) {
-										bestUpgradeEl = upgradeEl;
-									}
+								RoiAccount worker = coreWorkers.poll();
+								if (worker == null) {
+									worker = copy.fork(coreState);
+								} else {
+									worker.restore(coreState);
 								}
-							}
+								try {
+									results[c] = evaluateCoreCandidate(worker, candidates.get(c), preProduction);
+								} finally {
+									coreWorkers.add(worker);
+								}
+							})).get();
+						} catch (InterruptedException e) {
+							isCanceled = true;
+						} catch (ExecutionException e) {
+							throw new IllegalStateException("Core upgrade evaluation failed", e.getCause());
+						}
+					}
+					if (isCanceled) {
+						return;
+					}
+					// Reduce in candidate order so that the result does not depend on which thread finished first
+					RoiSequenceCoreElement bestUpgradeEl = null;
+					for (RoiSequenceCoreElement upgradeEl : results) {
+						if (upgradeEl != null && (bestUpgradeEl == null || compareRoi(upgradeEl.getRoi(), bestUpgradeEl.getRoi()) > 0)) {
+							bestUpgradeEl = upgradeEl;
 						}
 					}
 
@@ -285,12 +388,15 @@ public class RoiSequenceGenerator {
 					copy.flush();
 					sequence.add(bestUpgradeEl);
 				}
+			} finally {
+				if (corePool != null) {
+					corePool.shutdownNow();
+				}
 			}
 
-			RoiSequenceCoreElement[] seqArray = sequence.toArray(new RoiSequenceCoreElement[sequence.size()]);
 			long lifetimeMetric = addHelperUpgrades(copy, sequence, true);
 			theLifetimeMetric.set(Duration.ofSeconds(lifetimeMetric), null);
-			if (!SUPER_OPTIMIZATION) {
+			if (isCanceled || !isMutationOptimized.get() || sequence.size() < 2) {
 				return;
 			}
 
@@ -302,77 +408,7 @@ public class RoiSequenceGenerator {
 			// * * Regular fleet saving costs
 			// * * Ancillary spending habits
 			// */
-
-			ListenerList<Mutation> evaluatedMutations = ListenerList.build().build();
-			ElasticExecutor<Mutation> mutationExecutor = new ElasticExecutor<>("Mutation Optimizer",
-				() -> new ElasticExecutor.TaskExecutor<Mutation>() {
-					private final RoiAccount account = new RoiAccount(RoiSequenceGenerator.this, theAccount);
-
-					@Override
-					public void execute(Mutation task) {
-						if (isCanceled) {
-							return;
-						}
-						task.evaluate(account);
-						evaluatedMutations.add(task, false);
-						account.reset();
-					}
-				});
-			Mutation original = new Mutation(seqArray, lifetimeMetric);
-			BetterTreeSet<Mutation> sortedMutations = BetterTreeSet
-				.<Mutation> buildTreeSet((m1, m2) -> Long.compare(m1.lifetimeMetric, m2.lifetimeMetric)).safe(false).build();
-			sortedMutations.add(original);
-			int mutationCount = 100;
-			for (int i = 1; i < mutationCount; i++) {
-				mutationExecutor.execute(new Mutation(seqArray));
-			}
-			Mutation bestMutation = original;
-			long bestMutatedLifetime = lifetimeMetric;
-			System.out.println("Optimizing from " + QommonsUtils.printTimeLength(bestMutatedLifetime));
-			for (int round = 0; round < 10; round++) {
-				theStatus.set("Optimizing Upgrade Order (Round " + (round + 1) + " of 10)", null);
-				mutationExecutor.waitWhileActive(0);
-				if (isCanceled) {
-					return;
-				}
-				evaluatedMutations.dumpInto(sortedMutations);
-				evaluatedMutations.clear();
-				while (sortedMutations.size() > mutationCount) {
-					sortedMutations.removeLast();
-				}
-				if (sortedMutations.first() != bestMutation) {
-					bestMutation = sortedMutations.first();
-					System.out.println("Improved to " + QommonsUtils.printTimeLength(bestMutation.lifetimeMetric));
-					CollectionUtils.synchronize(sequence, Arrays.asList(bestMutation.coreSequence), (m1, m2) -> m1 == m2)//
-						.simple(m -> m).rightOrder().adjust();
-				}
-				int i = 0;
-				int j = sortedMutations.size();
-				for (Mutation m : sortedMutations) {
-					int reproduction;
-					if (m.lifetimeMetric < bestMutatedLifetime) {
-						reproduction = 15;
-					} else if (i < 10) {
-						reproduction = 8;
-					} else if (i < 20) {
-						reproduction = 6;
-					} else if (i < 30) {
-						reproduction = 4;
-					} else if (i < 40) {
-						reproduction = 3;
-					} else {
-						reproduction = 2;
-					}
-					for (int k = 0; k < reproduction && j < mutationCount * 10; k++, j++) {
-						mutationExecutor.execute(m.copy());
-					}
-					i++;
-				}
-				bestMutatedLifetime = bestMutation.lifetimeMetric;
-			}
-			theStatus.set("ROI Sequence Complete", null);
-			theProgress.set(sequence.size(), null);
-			theLifetimeMetric.set(Duration.ofSeconds(lifetimeMetric), null);
+			optimizeMutations(sequence, lifetimeMetric);
 		} finally {
 			if (isCanceled) {
 				theStatus.set("Canceled", null);
@@ -457,43 +493,139 @@ public class RoiSequenceGenerator {
 			new RoiCompoundSequenceElement(el.upgrade, el.getTargetLevel(), planets.isEmpty() ? null : planets.toArray(), el.getTime()));
 	}
 
+	private void optimizeMutations(BetterList<RoiSequenceCoreElement> sequence, long lifetimeMetric) {
+		int population = Math.max(1, theMutationPopulation.get());
+		int rounds = theMutationRounds.get();
+		ReproductionSchedule schedule = theReproductionSchedule.get();
+		Long seed = theMutationSeed.get();
+		Random random = seed == null ? new Random() : new Random(seed);
+		Duration budget = theMutationBudget.get();
+		long deadline = (budget == null || budget.isZero()) ? Long.MAX_VALUE : System.currentTimeMillis() + budget.toMillis();
+
+		// Every mutation is simulated from the initial state of the account
+		RoiAccount baseAccount = new RoiAccount(this, theAccount);
+		RoiAccount.Snapshot baseState = baseAccount.snapshot();
+		ListenerList<Mutation> evaluatedMutations = ListenerList.build().build();
+		ElasticExecutor<Mutation> mutationExecutor = new ElasticExecutor<>("Mutation Optimizer",
+			() -> new ElasticExecutor.TaskExecutor<Mutation>() {
+				private final RoiAccount account = baseAccount.fork(baseState);
+
+				@Override
+				public void execute(Mutation task) {
+					if (isCanceled || System.currentTimeMillis() >= deadline) {
+						return;
+					}
+					task.evaluate(account, baseState);
+					if (!isCanceled) {
+						evaluatedMutations.add(task, false);
+					}
+				}
+			});
+		mutationExecutor.setMaxThreadCount(Math.max(1, theMutationThreads.get()));
+		RoiSequenceCoreElement[] seqArray = sequence.toArray(new RoiSequenceCoreElement[sequence.size()]);
+		int[] mutationIds = new int[1];
+		Mutation original = new Mutation(mutationIds[0]++, seqArray, lifetimeMetric);
+		// Best first. Ties are broken by creation order so that a given seed always produces the same result.
+		BetterTreeSet<Mutation> sortedMutations = BetterTreeSet.<Mutation> buildTreeSet(Mutation::compareTo).safe(false).build();
+		sortedMutations.add(original);
+		for (int i = 1; i < population; i++) {
+			mutationExecutor.execute(new Mutation(mutationIds[0]++, seqArray, random));
+		}
+		Mutation bestMutation = original;
+		for (int round = 0; round < rounds; round++) {
+			theStatus.set("Optimizing Upgrade Order (Round " + (round + 1) + " of " + rounds + ")", null);
+			theProgress.set(round, null);
+			mutationExecutor.waitWhileActive(0);
+			if (isCanceled) {
+				return;
+			}
+			evaluatedMutations.dumpInto(sortedMutations);
+			evaluatedMutations.clear();
+			while (sortedMutations.size() > population) {
+				sortedMutations.removeLast();
+			}
+			long previousBest = bestMutation.lifetimeMetric;
+			if (sortedMutations.first() != bestMutation) {
+				bestMutation = sortedMutations.first();
+			}
+			theLifetimeMetric.set(Duration.ofSeconds(bestMutation.lifetimeMetric), null);
+			if (round == rounds - 1 || System.currentTimeMillis() >= deadline) {
+				break;
+			}
+			int rank = 0;
+			int j = sortedMutations.size();
+			for (Mutation m : sortedMutations) {
+				int reproduction = schedule.getOffspring(rank, compareLifetimes(m.lifetimeMetric, previousBest) > 0);
+				for (int k = 0; k < reproduction && j < population * 10; k++, j++) {
+					mutationExecutor.execute(m.copy(mutationIds[0]++, random));
+				}
+				rank++;
+			}
+		}
+		if (bestMutation != original) {
+			// Re-simulate so the element times reflect the chosen sequence
+			getLifetimeMetric(baseAccount, Arrays.asList(bestMutation.coreSequence));
+			CollectionUtils.synchronize(sequence, Arrays.asList(bestMutation.coreSequence), (m1, m2) -> m1 == m2)//
+				.simple(m -> m).rightOrder().adjust();
+		}
+		theStatus.set("ROI Sequence Complete", null);
+		theProgress.set(sequence.size(), null);
+		theLifetimeMetric.set(Duration.ofSeconds(bestMutation.lifetimeMetric), null);
+	}
+
 	class Mutation implements Comparable<Mutation> {
+		final int id;
 		final RoiSequenceCoreElement[] coreSequence;
 		long lifetimeMetric;
 		int mutatedIndex;
 
-		Mutation(RoiSequenceCoreElement[] seq) {
-			coreSequence = seq.clone();
+		Mutation(int id, RoiSequenceCoreElement[] seq, Random random) {
+			this.id = id;
+			// Evaluation modifies the helpers and accessories of the elements and sets the times of every element under them,
+			// so each mutation needs its own deep copies
+			coreSequence = new RoiSequenceCoreElement[seq.length];
+			for (int i = 0; i < seq.length; i++) {
+				coreSequence[i] = seq[i].copy();
+			}
 			lifetimeMetric = -1;
 			mutatedIndex = -1;
-			mutate();
+			mutate(random);
 		}
 
-		Mutation(RoiSequenceCoreElement[] coreSeq, long lifetimeMetric) {
+		Mutation(int id, RoiSequenceCoreElement[] coreSeq, long lifetimeMetric) {
+			this.id = id;
 			coreSequence = coreSeq.clone();
 			this.lifetimeMetric = lifetimeMetric;
 		}
 
 		@Override
 		public int compareTo(Mutation other) {
-			return Long.compare(lifetimeMetric, other.lifetimeMetric);
+			int comp = -compareLifetimes(lifetimeMetric, other.lifetimeMetric);
+			if (comp == 0) {
+				comp = Integer.compare(id, other.id);
+			}
+			return comp;
 		}
 
-		void mutate() {
-			Random r = new Random();
-			mutatedIndex = r.nextInt(coreSequence.length - 1);
+		void mutate(Random random) {
+			mutatedIndex = random.nextInt(coreSequence.length - 1);
 			RoiSequenceCoreElement el = coreSequence[mutatedIndex];
 			coreSequence[mutatedIndex] = coreSequence[mutatedIndex + 1];
 			coreSequence[mutatedIndex + 1] = el;
 		}
 
-		void evaluate(RoiAccount account) {
+		private long simulate(RoiAccount account, RoiAccount.Snapshot start, List<RoiSequenceCoreElement> seq) {
+			account.restore(start);
+			return getLifetimeMetric(account, seq);
+		}
+
+		void evaluate(RoiAccount account, RoiAccount.Snapshot start) {
 			// Clear out and all the accessories that might be different now and re-evaluate them after
 			for (int i = mutatedIndex; i < coreSequence.length; i++) {
 				coreSequence[i].clearAccessories();
 			}
 			List<RoiSequenceCoreElement> seq = Arrays.asList(coreSequence);
-			lifetimeMetric = getLifetimeMetric(account, seq);
+			lifetimeMetric = simulate(account, start, seq);
 			// It might be the case that the helpers on the sequence element that has been advanced
 			// would better do their work on the previous element for which they help at all
 			for (int h = 0; h < seq.get(mutatedIndex + 1).getPreHelpers().size(); h++) {
@@ -501,10 +633,10 @@ public class RoiSequenceGenerator {
 					if (isCanceled) {
 						return;
 					}
-					if (getHelperTypes(seq.get(j).upgrade).contains(seq.get(mutatedIndex + 1).getPreHelpers().get(h))) {
+					if (isHelper(seq.get(j), seq.get(mutatedIndex + 1).getPreHelpers().get(h))) {
 						seq.get(j).withPreHelper(seq.get(mutatedIndex + 1).removePreHelper(h));
-						long newLifetime = getLifetimeMetric(account, seq);
-						if (newLifetime < lifetimeMetric) {
+						long newLifetime = simulate(account, start, seq);
+						if (compareLifetimes(newLifetime, lifetimeMetric) > 0) {
 							lifetimeMetric = newLifetime;
 							h--;
 						} else {
@@ -519,10 +651,10 @@ public class RoiSequenceGenerator {
 					if (isCanceled) {
 						return;
 					}
-					if (getHelperTypes(seq.get(j).upgrade).contains(seq.get(mutatedIndex + 1).getPostHelpers().get(h))) {
+					if (isHelper(seq.get(j), seq.get(mutatedIndex + 1).getPostHelpers().get(h))) {
 						seq.get(j).withPostHelper(seq.get(mutatedIndex + 1).removePostHelper(h));
-						long newLifetime = getLifetimeMetric(account, seq);
-						if (newLifetime < lifetimeMetric) {
+						long newLifetime = simulate(account, start, seq);
+						if (compareLifetimes(newLifetime, lifetimeMetric) > 0) {
 							lifetimeMetric = newLifetime;
 							h--;
 						} else {
@@ -538,8 +670,8 @@ public class RoiSequenceGenerator {
 			}
 		}
 
-		Mutation copy() {
-			return new Mutation(coreSequence);
+		Mutation copy(int newId, Random random) {
+			return new Mutation(newId, coreSequence, random);
 		}
 	}
 
@@ -571,6 +703,42 @@ public class RoiSequenceGenerator {
 		return HELPERS.get(upgrade);
 	}
 
+	private static boolean isHelper(RoiSequenceElement el, RoiSequenceElement helper) {
+		List<AccountUpgradeType> helperTypes = el.upgrade == null ? null : getHelperTypes(el.upgrade);
+		return helperTypes != null && helperTypes.contains(helper.upgrade);
+	}
+
+	static class CoreCandidate {
+		final AccountUpgradeType upgrade;
+		final int planetIndex;
+
+		CoreCandidate(AccountUpgradeType upgrade, int planetIndex) {
+			this.upgrade = upgrade;
+			this.planetIndex = planetIndex;
+		}
+
+		@Override
+		public String toString() {
+			return planetIndex < 0 ? upgrade.name() : (upgrade + "@" + planetIndex);
+		}
+	}
+
+	private RoiSequenceCoreElement evaluateCoreCandidate(RoiAccount account, CoreCandidate candidate, long preProduction) {
+		try (Transaction branch = account.branch()) {
+			RoiSequenceCoreElement upgradeEl = coreUpgrade(account, candidate.planetIndex, candidate.upgrade);
+			if (candidate.upgrade.research == null) {
+				return upgradeEl;
+			}
+			long postProduction = account.getProduction();
+			if (postProduction > preProduction) {
+				TradeRatios tr = account.getUniverse().getTradeRatios();
+				return upgradeEl.setRoi(upgradeEl.getTotalCost().getMetalValue(tr) / (postProduction - preProduction));
+			} else {
+				return null;
+			}
+		}
+	}
+
 	public RoiSequenceCoreElement coreUpgrade(RoiAccount account, int planetIndex, AccountUpgradeType upgrade) {
 		long preProduction;
 		RoiPlanet planet = planetIndex < 0 ? null : account.roiPlanets().get(planetIndex);
@@ -775,14 +943,9 @@ public class RoiSequenceGenerator {
 				energy = theRules.economy().getProduction(account, planet, ResourceType.Energy, 0);
 			}
 		} else if (theEnergyType.get() == ProductionSource.Solar) {
-			Production energy = theRules.economy().getProduction(account, planet, ResourceType.Energy, 0);
-			while (energy.totalNet < 0) {
-				if (isCanceled) {
-					return;
-				}
-				upgrade.withPostHelper(
-					upgrade(account, upgrade.planetIndex, false, AccountUpgradeType.SolarPlant, planet.getSolarPlant() + 1));
-				energy = theRules.economy().getProduction(account, planet, ResourceType.Energy, 0);
+			int solar = theRules.economy().getRequiredSolarPlant(account, planet, 0);
+			if (solar > planet.getSolarPlant()) {
+				upgrade.withPostHelper(upgrade(account, upgrade.planetIndex, false, AccountUpgradeType.SolarPlant, solar));
 			}
 		} else {
 			int sats = OGameUtils.getRequiredSatellites(account, planet, theRules.economy());
@@ -790,7 +953,7 @@ public class RoiSequenceGenerator {
 				upgrade.withPostHelper(upgrade(account, upgrade.planetIndex, false, AccountUpgradeType.SolarSatellite, sats));
 			}
 		}
-		OGameUtils.optimizeEnergy(account, planet, theRules.economy());
+		theEnergyOptimizer.optimize(account, planet, new ProductionBuffer());
 		addAccessories(account, upgrade);
 	}
 
@@ -826,28 +989,20 @@ public class RoiSequenceGenerator {
 			return;
 		}
 		Duration storage = theStorageContainment.get();
-		RoiPlanet planet = account.roiPlanets().get(el.planetIndex);
+		RoiPlanet planet = account.roiPlanets().get(planetIndex);
 		FullProduction production = planet.getProduction();
 
-		long storageReq = production.metal * storage.getSeconds() / 3600;
-		long storageCap = theRules.economy().getStorage(planet, ResourceType.Metal);
-		while (storageCap < storageReq) {
-			el.withAccessory(upgrade(account, planetIndex, false, AccountUpgradeType.MetalStorage));
-			storageCap = theRules.economy().getStorage(planet, ResourceType.Metal);
-		}
-
-		storageReq = production.crystal * storage.getSeconds() / 3600;
-		storageCap = theRules.economy().getStorage(planet, ResourceType.Crystal);
-		while (storageCap < storageReq) {
-			el.withAccessory(upgrade(account, planetIndex, false, AccountUpgradeType.CrystalStorage));
-			storageCap = theRules.economy().getStorage(planet, ResourceType.Crystal);
-		}
+		checkStorage(account, el, planetIndex, ResourceType.Metal, production.metal * storage.getSeconds() / 3600);
+		checkStorage(account, el, planetIndex, ResourceType.Crystal, production.crystal * storage.getSeconds() / 3600);
+		checkStorage(account, el, planetIndex, ResourceType.Deuterium, production.deuterium * storage.getSeconds() / 3600);
+	}
 
-		storageReq = production.deuterium * storage.getSeconds() / 3600;
-		storageCap = theRules.economy().getStorage(planet, ResourceType.Crystal);
-		while (storageCap < storageReq) {
-			el.withAccessory(upgrade(account, planetIndex, false, AccountUpgradeType.DeuteriumStorage));
-			storageCap = theRules.economy().getStorage(planet, ResourceType.Crystal);
+	private void checkStorage(RoiAccount account, RoiSequenceCoreElement el, int planetIndex, ResourceType resource, long storageReq) {
+		RoiPlanet planet = account.roiPlanets().get(planetIndex);
+		AccountUpgradeType storage = AccountUpgradeType.getStorage(resource);
+		int required = theRules.economy().getRequiredStorage(planet, resource, storageReq);
+		if (required > storage.getLevel(account, planet)) {
+			el.withAccessory(upgrade(account, planetIndex, false, storage, required));
 		}
 	}
 
@@ -966,8 +1121,9 @@ public class RoiSequenceGenerator {
 			// May need an actual planet for requirements
 			int pi=planetIndex>=0 ? planetIndex : 0;
 			// For all upgrades, calculate ROI based on the cost of not only the building itself,
-			// but of all required buildings and researches needed to be able to build it
-			for (Requirement req : theRules.economy().getRequirements(upgrade)) {
+			// but of all required buildings and researches needed to be able to build it.
+			// The closure is ordered so that each requirement's own requirements are satisfied before it.
+			for (Requirement req : theRules.economy().getRequirementClosure(upgrade)) {
 				int currentReqLevel = req.type.getLevel(account, rBody);
 				if (currentReqLevel < req.level) {
 					el.withDependency(upgrade(account, pi, moon, req.type, req.level));
@@ -1044,7 +1200,8 @@ public class RoiSequenceGenerator {
 
 	long addHelperUpgrades(RoiAccount account, List<RoiSequenceCoreElement> sequence, boolean updates) {
 		account.reset();
-		long lifetimeMetric = getLifetimeMetric(account, sequence);
+		LifetimeTrajectory baseline = recordLifetime(account, sequence, 0);
+		long lifetimeMetric = baseline.lifetime;
 		account.reset();
 		int seqIndex = -1;
 		ListIterator<RoiSequenceCoreElement> sequenceIter = sequence.listIterator();
@@ -1080,7 +1237,7 @@ public class RoiSequenceGenerator {
 						}
 						long helpedLifetime;
 						try (Transaction branch = account.branch()) {
-							helpedLifetime = getLifetimeMetric(account, sequence.subList(seqIndex, sequence.size()));
+							helpedLifetime = getLifetimeMetric(account, sequence, seqIndex, baseline);
 						}
 						el.removePreHelper(el.getPreHelpers().size() - 1);
 						if (compareLifetimes(helpedLifetime, bestLifetime) > 0) {
@@ -1096,7 +1253,7 @@ public class RoiSequenceGenerator {
 							}
 							long helpedLifetime;
 							try (Transaction branch = account.branch()) {
-								helpedLifetime = getLifetimeMetric(account, sequence.subList(seqIndex, sequence.size()));
+								helpedLifetime = getLifetimeMetric(account, sequence, seqIndex, baseline);
 							}
 							el.removePreHelper(el.getPreHelpers().size() - 1);
 							if (compareLifetimes(helpedLifetime, bestLifetime) > 0) {
@@ -1108,6 +1265,10 @@ public class RoiSequenceGenerator {
 				}
 				if (bestHelper != null) {
 					el.withPreHelper(bestHelper);
+					// The sequence has changed from here on, so the checkpoints must be re-recorded
+					try (Transaction branch = account.branch()) {
+						baseline = recordLifetime(account, sequence, seqIndex);
+					}
 					lifetimeMetric = bestLifetime;
 					if (updates) {
 						sequenceIter.set(el);
@@ -1149,6 +1310,76 @@ public class RoiSequenceGenerator {
 				return -index;
 			}
 		}
+		return completeLifetime(account);
+	}
+
+	/**
+	 * A record of a simulation of a sequence, with checkpoints of the account's state every {@link #LIFETIME_CHECKPOINT_INTERVAL}
+	 * elements
+	 */
+	static class LifetimeTrajectory {
+		/** The account's state before each sequence element, by index. Null where no checkpoint was recorded. */
+		final RoiAccount.Snapshot[] checkpoints;
+		final long lifetime;
+
+		LifetimeTrajectory(RoiAccount.Snapshot[] checkpoints, long lifetime) {
+			this.checkpoints = checkpoints;
+			this.lifetime = lifetime;
+		}
+	}
+
+	/**
+	 * Simulates the remainder of a sequence, recording checkpoints along the way
+	 * 
+	 * @param account The account, in the state just before the given sequence element
+	 * @param sequence The sequence to simulate
+	 * @param start The index of the first sequence element to simulate
+	 * @return The recorded trajectory
+	 */
+	LifetimeTrajectory recordLifetime(RoiAccount account, List<RoiSequenceCoreElement> sequence, int start) {
+		RoiAccount.Snapshot[] checkpoints = new RoiAccount.Snapshot[sequence.size()];
+		return new LifetimeTrajectory(checkpoints, simulateLifetime(account, sequence, start, checkpoints, null));
+	}
+
+	/**
+	 * Computes the lifetime metric of the remainder of a sequence whose beginning may differ from that of a previously recorded
+	 * trajectory. As soon as the simulation arrives at the same state as the baseline at one of its checkpoints (offset only in time), the
+	 * rest of the simulation would play out exactly as it did for the baseline, so the result is extrapolated from there.
+	 * 
+	 * @param account The account, in the state just before the given sequence element
+	 * @param sequence The sequence to simulate
+	 * @param start The index of the first sequence element to simulate
+	 * @param baseline The trajectory recorded for the sequence, which must be identical to this one after the first element
+	 * @return The lifetime metric of the sequence
+	 */
+	long getLifetimeMetric(RoiAccount account, List<RoiSequenceCoreElement> sequence, int start, LifetimeTrajectory baseline) {
+		return simulateLifetime(account, sequence, start, null, baseline);
+	}
+
+	private long simulateLifetime(RoiAccount account, List<RoiSequenceCoreElement> sequence, int start, RoiAccount.Snapshot[] record,
+		LifetimeTrajectory baseline) {
+		for (int i = start; i < sequence.size(); i++) {
+			if (isCanceled) {
+				return -1;
+			}
+			if (i > start && i % LIFETIME_CHECKPOINT_INTERVAL == 0) {
+				if (record != null) {
+					record[i] = account.snapshot();
+				} else if (baseline != null && baseline.lifetime >= 0 && baseline.checkpoints[i] != null) {
+					long offset = account.getTimeOffset(baseline.checkpoints[i]);
+					if (offset != RoiAccount.NO_OFFSET) {
+						return baseline.lifetime + offset;
+					}
+				}
+			}
+			if (!upgrade(account, sequence.get(i), true)) {
+				return -(i - start);
+			}
+		}
+		return completeLifetime(account);
+	}
+
+	private long completeLifetime(RoiAccount account) {
 		// Include the completion of the last astro and the leveling of the first planet in the lifetime metric
 		if (account.getResearch().getCurrentUpgrade() == ResearchType.Astrophysics) {
 			// Astro must be going. Gotta wait for it to finish.
@@ -1276,7 +1507,7 @@ public class RoiSequenceGenerator {
 			return true;
 		}
 		if (currentLevel == 0) {
-			for (Requirement req : theRules.economy().getRequirements(upgrade)) {
+			for (Requirement req : theRules.economy().getRequirementClosure(upgrade)) {
 				int currentReqLevel = req.type.getLevel(account, planet);
 				if (currentReqLevel < req.level) {
 					if (!doUpgrade(account, req.type, planet, req.level, simulate)) {
@@ -0,0 +1,395 @@
+package org.quark.ogame.roi;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.observe.config.ObservableConfig;
+import org.observe.config.ObservableConfig.XmlEncoding;
+import org.observe.config.SyncValueSet;
+import org.observe.util.TypeTokens;
+import org.qommons.QommonsUtils;
+import org.qommons.ValueHolder;
+import org.qommons.collect.BetterList;
+import org.qommons.tree.BetterTreeList;
+import org.quark.ogame.uni.Account;
+import org.quark.ogame.uni.OGameEconomyRuleSet.ProductionSource;
+import org.quark.ogame.uni.OGameRuleSet;
+import org.quark.ogame.uni.UpgradeCost;
+import org.quark.ogame.uni.versions.OGameRuleSets;
+import org.xml.sax.SAXException;
+
+/**
+ * Runs the {@link RoiSequenceGenerator} without a UI, reading an account from the OCcountant config file and writing the resulting
+ * sequence as JSON or CSV. Intended for batching what-if runs.
+ *
+ * <p>
+ * Usage: <code>RoiSequenceRunner --account=&lt;name or id&gt; [options]</code>
+ * </p>
+ * <ul>
+ * <li><b>--config=</b>The config file to read accounts from (default occountant.xml)</li>
+ * <li><b>--account=</b>The name or ID of the account to generate the sequence for (default: the first account)</li>
+ * <li><b>--rules=</b>The name of the rule set to use, e.g. 8.0.0-pl7 (default: the latest)</li>
+ * <li><b>--planets=</b>The target planet count</li>
+ * <li><b>--energy=</b>The energy type to use for new energy (Satellite, Solar, or Fusion)</li>
+ * <li><b>--storage=</b>The amount of production the storage buildings should contain, e.g. 12h</li>
+ * <li><b>--defense=</b>The amount of production that defense should protect, e.g. 1d</li>
+ * <li><b>--holding-cargoes</b>Whether to build cargoes to accommodate holdings</li>
+ * <li><b>--harvesting-cargoes</b>Whether to build cargoes to harvest production</li>
+ * <li><b>--threads=</b>The number of threads to evaluate core upgrade candidates with (default 1)</li>
+ * <li><b>--optimize</b>Whether to run the genetic optimizer on the sequence</li>
+ * <li><b>--population=</b>The number of mutations the optimizer keeps between rounds</li>
+ * <li><b>--rounds=</b>The number of rounds of mutation to run</li>
+ * <li><b>--reproduction=</b>The optimizer's reproduction schedule, e.g. 15:8x10,6x10,4x10,3x10,2</li>
+ * <li><b>--seed=</b>The seed for the optimizer's mutations, for reproducible runs</li>
+ * <li><b>--budget=</b>The maximum time to spend optimizing, e.g. 2h</li>
+ * <li><b>--optimizer-threads=</b>The maximum number of threads to evaluate mutations with</li>
+ * <li><b>--format=</b>json or csv (default json)</li>
+ * <li><b>--out=</b>The file to write the sequence to (default: standard out)</li>
+ * </ul>
+ */
+public class RoiSequenceRunner {
+	private final RoiSequenceGenerator theGenerator;
+	private final BetterList<RoiSequenceCoreElement> theSequence;
+
+	public RoiSequenceRunner(OGameRuleSet rules, Account account) {
+		theGenerator = new RoiSequenceGenerator(rules, account);
+		theSequence = new BetterTreeList<>(false);
+	}
+
+	public RoiSequenceGenerator getGenerator() {
+		return theGenerator;
+	}
+
+	public BetterList<RoiSequenceCoreElement> getSequence() {
+		return theSequence;
+	}
+
+	/**
+	 * Generates the sequence on the current thread
+	 *
+	 * @return This runner
+	 */
+	public RoiSequenceRunner run() {
+		theSequence.clear();
+		theGenerator.produceSequence(theSequence);
+		return this;
+	}
+
+	public void writeJson(PrintWriter out) {
+		Account account = theGenerator.getAccount();
+		Duration lifetime = theGenerator.getLifetimeMetric().get();
+		out.append("{\n");
+		out.append("\t\"account\": ").append(jsonString(account.getName())).append(",\n");
+		out.append("\t\"rules\": ").append(jsonString(theGenerator.getRules().getName())).append(",\n");
+		out.append("\t\"targetPlanets\": ").append(String.valueOf(theGenerator.getTargetPlanet().get())).append(",\n");
+		out.append("\t\"energyType\": ").append(jsonString(String.valueOf(theGenerator.getEnergyType().get()))).append(",\n");
+		out.append("\t\"lifetimeSeconds\": ").append(lifetime == null ? "null" : String.valueOf(lifetime.getSeconds())).append(",\n");
+		out.append("\t\"sequence\": [");
+		int index = 0;
+		for (RoiSequenceCoreElement el : theSequence) {
+			if (index > 0) {
+				out.append(',');
+			}
+			out.append("\n\t\t{");
+			out.append("\"index\": ").append(String.valueOf(index));
+			out.append(", \"upgrade\": ").append(el.upgrade == null ? "null" : jsonString(el.upgrade.name()));
+			out.append(", \"planet\": ").append(String.valueOf(el.planetIndex));
+			out.append(", \"planetName\": ").append(jsonString(getPlanetName(el.planetIndex)));
+			out.append(", \"level\": ").append(String.valueOf(el.getTargetLevel()));
+			out.append(", \"time\": ").append(String.valueOf(el.getTime()));
+			out.append(", \"roi\": ").append(Double.isFinite(el.getRoi()) ? String.valueOf(el.getRoi()) : "null");
+			UpgradeCost cost = el.getTotalCost();
+			out.append(", \"metal\": ").append(String.valueOf(cost == null ? 0 : cost.getMetal()));
+			out.append(", \"crystal\": ").append(String.valueOf(cost == null ? 0 : cost.getCrystal()));
+			out.append(", \"deuterium\": ").append(String.valueOf(cost == null ? 0 : cost.getDeuterium()));
+			out.append('}');
+			index++;
+		}
+		out.append("\n\t]\n}\n");
+		out.flush();
+	}
+
+	public void writeCsv(PrintWriter out) {
+		out.append("Index,Upgrade,Planet,Planet Name,Level,Time,ROI,Metal,Crystal,Deuterium\n");
+		int index = 0;
+		for (RoiSequenceCoreElement el : theSequence) {
+			UpgradeCost cost = el.getTotalCost();
+			out.append(String.valueOf(index)).append(',')//
+				.append(el.upgrade == null ? "" : el.upgrade.name()).append(',')//
+				.append(String.valueOf(el.planetIndex)).append(',')//
+				.append(csvString(getPlanetName(el.planetIndex))).append(',')//
+				.append(String.valueOf(el.getTargetLevel())).append(',')//
+				.append(String.valueOf(el.getTime())).append(',')//
+				.append(Double.isFinite(el.getRoi()) ? String.valueOf(el.getRoi()) : "").append(',')//
+				.append(String.valueOf(cost == null ? 0 : cost.getMetal())).append(',')//
+				.append(String.valueOf(cost == null ? 0 : cost.getCrystal())).append(',')//
+				.append(String.valueOf(cost == null ? 0 : cost.getDeuterium())).append('\n');
+			index++;
+		}
+		Duration lifetime = theGenerator.getLifetimeMetric().get();
+		out.append("Lifetime,").append(lifetime == null ? "" : String.valueOf(lifetime.getSeconds())).append('\n');
+		out.flush();
+	}
+
+	private String getPlanetName(int planetIndex) {
+		Account account = theGenerator.getAccount();
+		if (planetIndex < 0) {
+			return "";
+		} else if (planetIndex < account.getPlanets().getValues().size()) {
+			return account.getPlanets().getValues().get(planetIndex).getName();
+		} else {
+			return "Planet " + (planetIndex + 1);
+		}
+	}
+
+	private static String jsonString(String str) {
+		if (str == null) {
+			return "null";
+		}
+		StringBuilder json = new StringBuilder(str.length() + 2).append('"');
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			switch (c) {
+			case '"':
+			case '\\':
+				json.append('\\').append(c);
+				break;
+			case '\n':
+				json.append("\\n");
+				break;
+			case '\r':
+				json.append("\\r");
+				break;
+			case '\t':
+				json.append("\\t");
+				break;
+			default:
+				if (c < ' ') {
+					json.append(String.format("\\u%04x", (int) c));
+				} else {
+					json.append(c);
+				}
+			}
+		}
+		return json.append('"').toString();
+	}
+
+	private static String csvString(String str) {
+		if (str.indexOf(',') < 0 && str.indexOf('"') < 0 && str.indexOf('\n') < 0) {
+			return str;
+		}
+		return '"' + str.replace("\"", "\"\"") + '"';
+	}
+
+	public static SyncValueSet<Account> readAccounts(File configFile) throws IOException {
+		ObservableConfig config = ObservableConfig.createRoot("occountant");
+		try (InputStream in = new BufferedInputStream(new FileInputStream(configFile))) {
+			ObservableConfig.readXml(config, in, XmlEncoding.DEFAULT);
+		} catch (SAXException e) {
+			throw new IOException("Could not parse config file " + configFile, e);
+		}
+		ValueHolder<SyncValueSet<Account>> accounts = new ValueHolder<>();
+		config.asValue(TypeTokens.get().of(Account.class)).at("accounts/account").buildEntitySet(accounts);
+		return accounts.get();
+	}
+
+	public static OGameRuleSet getRuleSet(String name) {
+		if (name == null) {
+			return OGameRuleSets.ALL.get(OGameRuleSets.ALL.size() - 1);
+		}
+		for (OGameRuleSet ruleSet : OGameRuleSets.ALL) {
+			if (ruleSet.getName().equals(name)) {
+				return ruleSet;
+			}
+		}
+		throw new IllegalArgumentException("Unrecognized rule set: " + name);
+	}
+
+	public static Account getAccount(SyncValueSet<Account> accounts, String nameOrId) {
+		if (accounts.getValues().isEmpty()) {
+			throw new IllegalArgumentException("No accounts configured");
+		} else if (nameOrId == null) {
+			return accounts.getValues().getFirst();
+		}
+		for (Account account : accounts.getValues()) {
+			if (account.getName().equals(nameOrId) || String.valueOf(account.getId()).equals(nameOrId)) {
+				return account;
+			}
+		}
+		throw new IllegalArgumentException("No such account: " + nameOrId);
+	}
+
+	public static void main(String[] args) {
+		String configFile = "occountant.xml";
+		String accountName = null;
+		String ruleSetName = null;
+		String format = "json";
+		String outFile = null;
+		List<String> generatorArgs = new ArrayList<>();
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+			String name = eq < 0 ? arg : arg.substring(0, eq);
+			String value = eq < 0 ? null : arg.substring(eq + 1);
+			switch (name) {
+			case "--config":
+				configFile = value;
+				break;
+			case "--account":
+				accountName = value;
+				break;
+			case "--rules":
+				ruleSetName = value;
+				break;
+			case "--format":
+				format = value;
+				break;
+			case "--out":
+				outFile = value;
+				break;
+			default:
+				generatorArgs.add(arg);
+			}
+		}
+		if (!format.equals("json") && !format.equals("csv")) {
+			System.err.println("Unrecognized format: " + format);
+			System.exit(1);
+			return;
+		}
+
+		RoiSequenceRunner runner;
+		try {
+			Account account = getAccount(readAccounts(new File(configFile)), accountName);
+			runner = new RoiSequenceRunner(getRuleSet(ruleSetName), account);
+			for (String arg : generatorArgs) {
+				runner.configure(arg);
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+			return;
+		}
+		runner.getGenerator().getStatus().noInitChanges().act(evt -> {
+			if (evt.getNewValue() != null) {
+				System.err.println(evt.getNewValue());
+			}
+		});
+		long start = System.currentTimeMillis();
+		runner.run();
+		System.err.println("Sequence generated in " + QommonsUtils.printTimeLength(System.currentTimeMillis() - start));
+
+		try (PrintWriter out = outFile == null ? new PrintWriter(System.out)
+			: new PrintWriter(new OutputStreamWriter(new FileOutputStream(outFile), Charset.forName("UTF-8")))) {
+			if (format.equals("csv")) {
+				runner.writeCsv(out);
+			} else {
+				runner.writeJson(out);
+			}
+		} catch (IOException e) {
+			System.err.println("Could not write " + outFile + ": " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Applies a single command-line parameter to the generator
+	 *
+	 * @param arg The argument, e.g. "--planets=15"
+	 * @throws IllegalArgumentException If the argument is not recognized or cannot be parsed
+	 */
+	public void configure(String arg) throws IllegalArgumentException {
+		int eq = arg.indexOf('=');
+		String name = eq < 0 ? arg : arg.substring(0, eq);
+		String value = eq < 0 ? null : arg.substring(eq + 1);
+		try {
+			switch (name) {
+			case "--planets":
+				theGenerator.getTargetPlanet().set(Integer.parseInt(value), null);
+				break;
+			case "--energy":
+				theGenerator.getEnergyType().set(ProductionSource.valueOf(value), null);
+				break;
+			case "--storage":
+				theGenerator.getStorageContainment().set(parseDuration(value), null);
+				break;
+			case "--defense":
+				theGenerator.getDefense().set(parseDuration(value), null);
+				break;
+			case "--holding-cargoes":
+				theGenerator.isWithHoldingCargoes().set(value == null || Boolean.parseBoolean(value), null);
+				break;
+			case "--harvesting-cargoes":
+				theGenerator.isWithHarvestingCargoes().set(value == null || Boolean.parseBoolean(value), null);
+				break;
+			case "--threads":
+				theGenerator.getCoreThreads().set(Math.max(1, Integer.parseInt(value)), null);
+				break;
+			case "--optimize":
+				theGenerator.isMutationOptimized().set(value == null || Boolean.parseBoolean(value), null);
+				break;
+			case "--population":
+				theGenerator.getMutationPopulation().set(Integer.parseInt(value), null);
+				break;
+			case "--rounds":
+				theGenerator.getMutationRounds().set(Integer.parseInt(value), null);
+				break;
+			case "--reproduction":
+				theGenerator.getReproductionSchedule().set(ReproductionSchedule.parse(value), null);
+				break;
+			case "--seed":
+				theGenerator.getMutationSeed().set(Long.parseLong(value), null);
+				break;
+			case "--budget":
+				theGenerator.getMutationBudget().set(parseDuration(value), null);
+				break;
+			case "--optimizer-threads":
+				theGenerator.getMutationThreads().set(Math.max(1, Integer.parseInt(value)), null);
+				break;
+			case "--new-planet-slot":
+				theGenerator.getNewPlanetSlot().set(Integer.parseInt(value), null);
+				break;
+			case "--new-planet-fields":
+				theGenerator.getNewPlanetFields().set(Integer.parseInt(value), null);
+				break;
+			case "--new-planet-temp":
+				theGenerator.getNewPlanetTemp().set(Integer.parseInt(value), null);
+				break;
+			default:
+				throw new IllegalArgumentException("Unrecognized argument: " + arg);
+			}
+		} catch (NullPointerException | NumberFormatException | DateTimeParseException e) {
+			throw new IllegalArgumentException("Bad value for " + name + ": " + value, e);
+		}
+	}
+
+	/**
+	 * @param text The text to parse, either an ISO-8601 duration (e.g. PT12H) or a number followed by d, h, or m (e.g. 12h)
+	 * @return The parsed duration
+	 */
+	static Duration parseDuration(String text) {
+		if (text.startsWith("P") || text.startsWith("p")) {
+			return Duration.parse(text);
+		}
+		char unit = Character.toLowerCase(text.charAt(text.length() - 1));
+		switch (unit) {
+		case 'd':
+			return Duration.ofDays(Long.parseLong(text.substring(0, text.length() - 1)));
+		case 'h':
+			return Duration.ofHours(Long.parseLong(text.substring(0, text.length() - 1)));
+		case 'm':
+			return Duration.ofMinutes(Long.parseLong(text.substring(0, text.length() - 1)));
+		default:
+			return Duration.ofHours(Long.parseLong(text));
+		}
+	}
+}
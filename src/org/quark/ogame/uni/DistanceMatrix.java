@@ -0,0 +1,273 @@
+package org.quark.ogame.uni;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * A precomputed table of the flight distances between every pair of a set of coordinates, typically all the planets and moons of an account
+ * plus any coordinates pinned by the user, so that the distance between any two of them is a single array read.
+ * </p>
+ * <p>
+ * Coordinates are registered by an owner (e.g. a planet), and re-registering an owner at new coordinates moves it. A planet and its moon
+ * share coordinates and so share a node in the matrix. Adding, moving or removing an owner only recomputes the affected row and column.
+ * Distances between coordinates not in the matrix are computed directly by the fleet rules.
+ * </p>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ */
+public class DistanceMatrix {
+	private static class Node {
+		final int galaxy;
+		final int system;
+		final int slot;
+		int index;
+		int owners;
+
+		Node(int galaxy, int system, int slot) {
+			this.galaxy = galaxy;
+			this.system = system;
+			this.slot = slot;
+		}
+	}
+
+	private final FleetRules theRules;
+	private final Universe theUniverse;
+	// The universe settings the distances were computed with
+	private int theGalaxies;
+	private boolean isCircularUniverse;
+	private boolean isCircularGalaxies;
+
+	private final Map<Integer, Node> theNodesByCoords;
+	private final Map<Object, Node> theNodesByOwner;
+	private Node[] theNodes;
+	private int theSize;
+	/** Distances between nodes by index, row-major with a row length of theNodes.length */
+	private int[] theDistances;
+
+	/**
+	 * @param rules The fleet rules to compute distances with
+	 * @param universe The universe to compute distances in
+	 */
+	public DistanceMatrix(FleetRules rules, Universe universe) {
+		theRules = rules;
+		theUniverse = universe;
+		theNodesByCoords = new HashMap<>();
+		theNodesByOwner = new IdentityHashMap<>();
+		theNodes = new Node[16];
+		theDistances = new int[theNodes.length * theNodes.length];
+		captureUniverse();
+	}
+
+	public FleetRules getRules() {
+		return theRules;
+	}
+
+	public Universe getUniverse() {
+		return theUniverse;
+	}
+
+	/** @return The number of distinct coordinates in the matrix */
+	public int size() {
+		return theSize;
+	}
+
+	/**
+	 * @param rules The fleet rules currently in effect
+	 * @param universe The universe currently in effect
+	 * @return Whether this matrix was built for the given rules and universe
+	 */
+	public boolean isFor(FleetRules rules, Universe universe) {
+		return theRules == rules && theUniverse == universe;
+	}
+
+	/**
+	 * Recomputes all distances if the universe's galaxy count or circularity settings have changed since they were computed
+	 *
+	 * @return Whether the distances were recomputed
+	 */
+	public boolean checkUniverse() {
+		if (theGalaxies == theUniverse.getGalaxies() && isCircularUniverse == theUniverse.isCircularUniverse()
+			&& isCircularGalaxies == theUniverse.isCircularGalaxies()) {
+			return false;
+		}
+		captureUniverse();
+		for (int i = 0; i < theSize; i++) {
+			computeRow(i);
+		}
+		return true;
+	}
+
+	/**
+	 * Adds an owner to the matrix at the given coordinates, or moves it there if it is already in the matrix
+	 *
+	 * @param owner The owner of the coordinates, e.g. a planet or a pinned target
+	 * @param galaxy The galaxy of the coordinates
+	 * @param system The system of the coordinates
+	 * @param slot The slot of the coordinates
+	 * @return The index of the coordinates in the matrix
+	 */
+	public int put(Object owner, int galaxy, int system, int slot) {
+		Node node = theNodesByOwner.get(owner);
+		if (node != null) {
+			if (node.galaxy == galaxy && node.system == system && node.slot == slot) {
+				return node.index;
+			}
+			release(node);
+		}
+		node = theNodesByCoords.get(key(galaxy, system, slot));
+		if (node == null) {
+			node = new Node(galaxy, system, slot);
+			theNodesByCoords.put(key(galaxy, system, slot), node);
+			if (theSize == theNodes.length) {
+				grow();
+			}
+			node.index = theSize++;
+			theNodes[node.index] = node;
+			computeRow(node.index);
+		}
+		node.owners++;
+		theNodesByOwner.put(owner, node);
+		return node.index;
+	}
+
+	/**
+	 * @param owner The owner to add or move
+	 * @param coords The coordinates of the owner
+	 * @return The index of the coordinates in the matrix
+	 * @see #put(Object, int, int, int)
+	 */
+	public int put(Object owner, Coordinate coords) {
+		return put(owner, coords.getGalaxy(), coords.getSystem(), coords.getSlot());
+	}
+
+	/**
+	 * Removes an owner from the matrix. Its coordinates are removed when no other owner is at them.
+	 *
+	 * @param owner The owner to remove
+	 * @return Whether the owner was in the matrix
+	 */
+	public boolean remove(Object owner) {
+		Node node = theNodesByOwner.remove(owner);
+		if (node == null) {
+			return false;
+		}
+		release(node);
+		return true;
+	}
+
+	/** Removes all coordinates from the matrix */
+	public void clear() {
+		theNodesByCoords.clear();
+		theNodesByOwner.clear();
+		Arrays.fill(theNodes, 0, theSize, null);
+		theSize = 0;
+	}
+
+	/**
+	 * @param galaxy The galaxy of the coordinates
+	 * @param system The system of the coordinates
+	 * @param slot The slot of the coordinates
+	 * @return The index of the coordinates in the matrix, or -1 if they are not in it
+	 */
+	public int indexOf(int galaxy, int system, int slot) {
+		Node node = theNodesByCoords.get(key(galaxy, system, slot));
+		return node == null ? -1 : node.index;
+	}
+
+	/**
+	 * @param owner The owner to get the coordinate index of
+	 * @return The index of the owner's coordinates in the matrix, or -1 if it is not in it
+	 */
+	public int indexOf(Object owner) {
+		Node node = theNodesByOwner.get(owner);
+		return node == null ? -1 : node.index;
+	}
+
+	/**
+	 * @param sourceIndex The index of the source coordinates
+	 * @param destIndex The index of the destination coordinates
+	 * @return The flight distance between the coordinates
+	 */
+	public int getDistance(int sourceIndex, int destIndex) {
+		if (sourceIndex >= theSize || destIndex >= theSize) {
+			throw new IndexOutOfBoundsException(Math.max(sourceIndex, destIndex) + " of " + theSize);
+		}
+		return theDistances[sourceIndex * theNodes.length + destIndex];
+	}
+
+	/**
+	 * @param sourceGalaxy The galaxy of the source coordinates
+	 * @param sourceSystem The system of the source coordinates
+	 * @param sourceSlot The slot of the source coordinates
+	 * @param destGalaxy The galaxy of the destination coordinates
+	 * @param destSystem The system of the destination coordinates
+	 * @param destSlot The slot of the destination coordinates
+	 * @return The flight distance between the coordinates, from the matrix if both are in it
+	 */
+	public int getDistance(int sourceGalaxy, int sourceSystem, int sourceSlot, int destGalaxy, int destSystem, int destSlot) {
+		int source = indexOf(sourceGalaxy, sourceSystem, sourceSlot);
+		int dest = source < 0 ? -1 : indexOf(destGalaxy, destSystem, destSlot);
+		if (dest >= 0) {
+			return theDistances[source * theNodes.length + dest];
+		}
+		return theRules.getDistance(theUniverse, sourceGalaxy, sourceSystem, sourceSlot, destGalaxy, destSystem, destSlot);
+	}
+
+	private void captureUniverse() {
+		theGalaxies = theUniverse.getGalaxies();
+		isCircularUniverse = theUniverse.isCircularUniverse();
+		isCircularGalaxies = theUniverse.isCircularGalaxies();
+	}
+
+	private void release(Node node) {
+		if (--node.owners > 0) {
+			return;
+		}
+		theNodesByCoords.remove(key(node.galaxy, node.system, node.slot));
+		// Move the last node into the removed node's place
+		int last = --theSize;
+		if (node.index != last) {
+			Node moved = theNodes[last];
+			moved.index = node.index;
+			theNodes[node.index] = moved;
+			int stride = theNodes.length;
+			for (int i = 0; i < theSize; i++) {
+				theDistances[node.index * stride + i] = theDistances[last * stride + i];
+				theDistances[i * stride + node.index] = theDistances[i * stride + last];
+			}
+			theDistances[node.index * stride + node.index] = theDistances[last * stride + last];
+		}
+		theNodes[last] = null;
+	}
+
+	private void grow() {
+		int oldStride = theNodes.length;
+		int newStride = oldStride * 2;
+		int[] distances = new int[newStride * newStride];
+		for (int i = 0; i < theSize; i++) {
+			System.arraycopy(theDistances, i * oldStride, distances, i * newStride, theSize);
+		}
+		theNodes = Arrays.copyOf(theNodes, newStride);
+		theDistances = distances;
+	}
+
+	private void computeRow(int index) {
+		Node node = theNodes[index];
+		int stride = theNodes.length;
+		for (int i = 0; i < theSize; i++) {
+			Node other = theNodes[i];
+			theDistances[index * stride + i] = theRules.getDistance(theUniverse, //
+				node.galaxy, node.system, node.slot, other.galaxy, other.system, other.slot);
+			theDistances[i * stride + index] = theRules.getDistance(theUniverse, //
+				other.galaxy, other.system, other.slot, node.galaxy, node.system, node.slot);
+		}
+	}
+
+	private static Integer key(int galaxy, int system, int slot) {
+		return (galaxy * 1000 + system) * 100 + slot;
+	}
+}
@@ -0,0 +1,174 @@
+package org.quark.ogame.uni;
+
+import java.time.Duration;
+
+/**
+ * A snapshot of the fleet characteristics (speed, cargo space and fuel consumption rate) of every ship for an account under a set of
+ * fleet rules, compiled into a flat table so that flight calculations across many ships and routes are simple array reads.
+ * <p>
+ * A profile is immutable and does not track the account. Use {@link #isCurrent(FleetRules, Account)} to determine whether it needs to be
+ * recompiled, which is only the case when the account's research, class, alliance class, officers or fleet-related universe settings
+ * change.
+ */
+public final class FleetProfile {
+	private static final ShipyardItemType[] SHIP_TYPES = ShipyardItemType.values();
+	private static final ResearchType[] RESEARCH_TYPES = ResearchType.values();
+
+	private static final int SPEED = 0;
+	private static final int EXPEDITION_SPEED = 1;
+	private static final int ALLY_SPEED = 2;
+	private static final int EXPEDITION_ALLY_SPEED = 3;
+	private static final int CARGO = 4;
+	private static final int FUEL = 5;
+	private static final int STRIDE = 6;
+
+	private final FleetRules theRules;
+	/** {@link #STRIDE} values per ship type, indexed by {@link ShipyardItemType#ordinal() ordinal} */
+	private final int[] theTable;
+
+	// The account state this profile was compiled from
+	private final int[] theResearch;
+	private final AccountClass theGameClass;
+	private final AllianceClass theAllianceClass;
+	private final int theOfficers;
+	private final double theHyperspaceCargoBonus;
+	private final int theFleetSpeed;
+
+	/**
+	 * @param rules The fleet rules to compile
+	 * @param account The account to compile the fleet characteristics of
+	 */
+	public FleetProfile(FleetRules rules, Account account) {
+		theRules = rules;
+		theTable = new int[SHIP_TYPES.length * STRIDE];
+		for (ShipyardItemType type : SHIP_TYPES) {
+			if (!type.mobile) {
+				continue;
+			}
+			int offset = type.ordinal() * STRIDE;
+			theTable[offset + SPEED] = rules.getSpeed(type, account, false, false);
+			theTable[offset + EXPEDITION_SPEED] = rules.getSpeed(type, account, true, false);
+			theTable[offset + ALLY_SPEED] = rules.getSpeed(type, account, false, true);
+			theTable[offset + EXPEDITION_ALLY_SPEED] = rules.getSpeed(type, account, true, true);
+			theTable[offset + CARGO] = rules.getCargoSpace(type, account);
+			theTable[offset + FUEL] = rules.getFuelConsumption(type, account);
+		}
+		theResearch = getResearch(account.getResearch());
+		theGameClass = account.getGameClass();
+		theAllianceClass = account.getAllianceClass();
+		theOfficers = getOfficers(account.getOfficers());
+		theHyperspaceCargoBonus = account.getUniverse().getHyperspaceCargoBonus();
+		theFleetSpeed = account.getUniverse().getFleetSpeed();
+	}
+
+	public FleetRules getRules() {
+		return theRules;
+	}
+
+	/**
+	 * @param rules The fleet rules currently in effect
+	 * @param account The account to check against
+	 * @return Whether this profile still reflects the given rules and the fleet-relevant state of the account
+	 */
+	public boolean isCurrent(FleetRules rules, Account account) {
+		return theRules == rules//
+			&& theGameClass == account.getGameClass() && theAllianceClass == account.getAllianceClass()//
+			&& theOfficers == getOfficers(account.getOfficers())//
+			&& theHyperspaceCargoBonus == account.getUniverse().getHyperspaceCargoBonus()//
+			&& theFleetSpeed == account.getUniverse().getFleetSpeed()//
+			&& isResearchCurrent(account.getResearch());
+	}
+
+	private boolean isResearchCurrent(Research research) {
+		for (ResearchType type : RESEARCH_TYPES) {
+			if (theResearch[type.ordinal()] != research.getResearchLevel(type)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param type The ship type
+	 * @param expedition Whether the flight is an expedition
+	 * @param allianceMember Whether the flight is to an alliance member
+	 * @return The maximum speed of the ship
+	 * @see FleetRules#getSpeed(ShipyardItemType, Account, boolean, boolean)
+	 */
+	public int getSpeed(ShipyardItemType type, boolean expedition, boolean allianceMember) {
+		int column = allianceMember ? (expedition ? EXPEDITION_ALLY_SPEED : ALLY_SPEED) : (expedition ? EXPEDITION_SPEED : SPEED);
+		return theTable[type.ordinal() * STRIDE + column];
+	}
+
+	/**
+	 * @param type The ship type
+	 * @return The cargo space of one of the ship
+	 * @see FleetRules#getCargoSpace(ShipyardItemType, Account)
+	 */
+	public int getCargoSpace(ShipyardItemType type) {
+		return theTable[type.ordinal() * STRIDE + CARGO];
+	}
+
+	/**
+	 * @param type The ship type
+	 * @return The base fuel consumption rate of the ship
+	 * @see FleetRules#getFuelConsumption(ShipyardItemType, Account)
+	 */
+	public int getFuelConsumption(ShipyardItemType type) {
+		return theTable[type.ordinal() * STRIDE + FUEL];
+	}
+
+	/**
+	 * @param type The ship type
+	 * @param distance The flight distance
+	 * @param speedPercent The speed setting of the flight
+	 * @param expedition Whether the flight is an expedition
+	 * @param allianceMember Whether the flight is to an alliance member
+	 * @return The time the ship would take to fly the distance
+	 */
+	public Duration getFlightTime(ShipyardItemType type, int distance, int speedPercent, boolean expedition, boolean allianceMember) {
+		return theRules.getFlightTime(getSpeed(type, expedition, allianceMember), distance, speedPercent);
+	}
+
+	/**
+	 * @param type The ship type
+	 * @param distance The flight distance
+	 * @param flightTime The duration of the flight
+	 * @return The fuel consumed by one of the ship for the flight
+	 * @see FleetRules#getFuelConsumption(ShipyardItemType, Account, int, Duration)
+	 */
+	public double getFuelConsumption(ShipyardItemType type, int distance, Duration flightTime) {
+		return theRules.getFuelConsumption(getSpeed(type, false, false), getFuelConsumption(type), distance, flightTime);
+	}
+
+	private static int[] getResearch(Research research) {
+		int[] levels = new int[RESEARCH_TYPES.length];
+		for (ResearchType type : RESEARCH_TYPES) {
+			levels[type.ordinal()] = research.getResearchLevel(type);
+		}
+		return levels;
+	}
+
+	private static int getOfficers(Officers officers) {
+		int flags = 0;
+		if (officers.isCommander()) {
+			flags |= 1;
+		}
+		if (officers.isAdmiral()) {
+			flags |= 2;
+		}
+		if (officers.isEngineer()) {
+			flags |= 4;
+		}
+		if (officers.isGeologist()) {
+			flags |= 8;
+		}
+		if (officers.isTechnocrat()) {
+			flags |= 16;
+		}
+		if (officers.isCommandingStaff()) {
+			flags |= 32;
+		}
+		return flags;
+	}
+}
@@ -2,6 +2,7 @@ package org.quark.ogame.uni;
 
 import java.time.Duration;
 
+/** The fleet rules of an OGame version. Implementations must be thread-safe. */
 public interface FleetRules {
 	int getCargoSpace(ShipyardItemType type, Account account);
 
@@ -14,4 +15,21 @@ public interface FleetRules {
 	Duration getFlightTime(int maxSpeed, int distance, int speedPercent);
 
 	double getFuelConsumption(ShipyardItemType type, Account account, int distance, Duration flightTime);
+
+	/**
+	 * @param maxSpeed The maximum speed of the ship
+	 * @param fuelRate The base fuel consumption rate of the ship
+	 * @param distance The flight distance
+	 * @param flightTime The duration of the flight
+	 * @return The fuel consumed by one ship with the given characteristics for the flight
+	 */
+	double getFuelConsumption(int maxSpeed, int fuelRate, int distance, Duration flightTime);
+
+	/**
+	 * @param account The account to compile the fleet characteristics of
+	 * @return A snapshot of the fleet characteristics of every ship for the account under these rules
+	 */
+	default FleetProfile compileProfile(Account account) {
+		return new FleetProfile(this, account);
+	}
 }
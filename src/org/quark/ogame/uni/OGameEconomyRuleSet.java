@@ -1,10 +1,12 @@
 package org.quark.ogame.uni;
 
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 
+/** The economic rules of an OGame version. Implementations must be thread-safe. */
 public interface OGameEconomyRuleSet {
 	public enum ProductionSource {
 		Base,
@@ -62,6 +64,116 @@ public interface OGameEconomyRuleSet {
 		}
 	}
 
+	/**
+	 * A mutable, reusable equivalent of {@link Production}, indexed by {@link ProductionSource#ordinal()}. Used by the simulation code
+	 * to compute production repeatedly without allocating anything.
+	 */
+	public class ProductionBuffer {
+		private final int[] theByType;
+		/** A bit for each source whose value has been set, to distinguish zero from absent like {@link Production#byType} does */
+		private int thePresent;
+		private int theProduction;
+		private int theConsumption;
+
+		public ProductionBuffer() {
+			theByType = new int[ProductionSource.values().length];
+		}
+
+		/**
+		 * Sets a source's contribution to the production. Positive amounts count as production, negative ones as consumption.
+		 * 
+		 * @param type The production source
+		 * @param amount The amount that the source produces or consumes
+		 * @return This buffer
+		 */
+		public ProductionBuffer put(ProductionSource type, int amount) {
+			int bit = 1 << type.ordinal();
+			if ((thePresent & bit) != 0) {
+				tally(-theByType[type.ordinal()]);
+			}
+			thePresent |= bit;
+			theByType[type.ordinal()] = amount;
+			tally(amount);
+			return this;
+		}
+
+		private void tally(int amount) {
+			if (amount < 0) {
+				theConsumption -= amount;
+			} else {
+				theProduction += amount;
+			}
+		}
+
+		/**
+		 * @param type The production source
+		 * @param amount The amount to add to the source's contribution
+		 * @return This buffer
+		 */
+		public ProductionBuffer plus(ProductionSource type, int amount) {
+			return put(type, get(type) + amount);
+		}
+
+		public int get(ProductionSource type) {
+			return theByType[type.ordinal()];
+		}
+
+		public boolean isPresent(ProductionSource type) {
+			return (thePresent & (1 << type.ordinal())) != 0;
+		}
+
+		public int getTotalProduction() {
+			return theProduction;
+		}
+
+		public int getTotalConsumption() {
+			return theConsumption;
+		}
+
+		public int getTotalNet() {
+			return theProduction - theConsumption;
+		}
+
+		/** @return This buffer, emptied */
+		public ProductionBuffer clear() {
+			Arrays.fill(theByType, 0);
+			thePresent = 0;
+			theProduction = theConsumption = 0;
+			return this;
+		}
+
+		/**
+		 * @param production The production to copy
+		 * @return This buffer, containing the given production
+		 */
+		public ProductionBuffer set(Production production) {
+			clear();
+			for (Map.Entry<ProductionSource, Integer> entry : production.byType.entrySet()) {
+				theByType[entry.getKey().ordinal()] = entry.getValue();
+				thePresent |= 1 << entry.getKey().ordinal();
+			}
+			theProduction = production.totalProduction;
+			theConsumption = production.totalConsumption;
+			return this;
+		}
+
+		/** @return An immutable {@link Production} with the contents of this buffer */
+		public Production toProduction() {
+			Map<ProductionSource, Integer> byType = new EnumMap<>(ProductionSource.class);
+			for (ProductionSource type : ProductionSource.values()) {
+				if (isPresent(type)) {
+					byType.put(type, theByType[type.ordinal()]);
+				}
+			}
+			return new Production(byType, theProduction, theConsumption);
+		}
+
+		@Override
+		public String toString() {
+			return theProduction + "-" + theConsumption + "=" + getTotalNet();
+		}
+	}
+
 	public class FullProduction {
 		public final int energy;
 		public final int metal;
@@ -79,6 +191,18 @@ public interface OGameEconomyRuleSet {
 			return UpgradeCost.of(UpgradeType.Building, metal, crystal, deuterium, energy, Duration.ZERO, 1, 0, 0);
 		}
 
+		/**
+		 * @param tradeRate The trade rate to use
+		 * @return The same as <code>{@link #asCost()}.{@link UpgradeCost#getMetalValue(TradeRatios) getMetalValue(tradeRate)}</code>,
+		 *         without creating the cost
+		 */
+		public double getMetalValue(TradeRatios tradeRate) {
+			long value = metal;
+			value += Math.round(crystal * tradeRate.getMetal() / tradeRate.getCrystal());
+			value += Math.round(deuterium * tradeRate.getMetal() / tradeRate.getDeuterium());
+			return value;
+		}
+
 		@Override
 		public String toString() {
 			return "M:" + metal + ", C:" + crystal + ", D:" + deuterium + ", E:" + energy;
@@ -102,23 +226,91 @@ public interface OGameEconomyRuleSet {
 
 	Production getProduction(Account account, Planet planet, ResourceType resourceType, double energyFactor);
 
+	/**
+	 * Same as {@link #getProduction(Account, Planet, ResourceType, double)}, but fills in a buffer instead of allocating a new production
+	 * 
+	 * @param account The account
+	 * @param planet The planet
+	 * @param resourceType The resource to get the production of
+	 * @param energyFactor The fraction of the energy required by the mines that is available
+	 * @param production The buffer to fill in. Any previous contents are cleared.
+	 * @return The buffer
+	 */
+	default ProductionBuffer getProduction(Account account, Planet planet, ResourceType resourceType, double energyFactor,
+		ProductionBuffer production) {
+		return production.set(getProduction(account, planet, resourceType, energyFactor));
+	}
+
 	default FullProduction getFullProduction(Account account, Planet planet) {
-		Production energyProduction = getProduction(account, planet, ResourceType.Energy, 1);
-		double energyFactor = Math.min(1, energyProduction.totalProduction * 1.0 / energyProduction.totalConsumption);
-		return new FullProduction(energyProduction.totalNet, //
-			getProduction(account, planet, ResourceType.Metal, energyFactor).totalNet, //
-			getProduction(account, planet, ResourceType.Crystal, energyFactor).totalNet, //
-			getProduction(account, planet, ResourceType.Deuterium, energyFactor).totalNet);
+		return getFullProduction(account, planet, new ProductionBuffer());
+	}
+
+	/**
+	 * @param account The account
+	 * @param planet The planet
+	 * @param buffer The buffer to use for the computation
+	 * @return The full production of the planet
+	 */
+	default FullProduction getFullProduction(Account account, Planet planet, ProductionBuffer buffer) {
+		getProduction(account, planet, ResourceType.Energy, 1, buffer);
+		int energy = buffer.getTotalNet();
+		double energyFactor = Math.min(1, buffer.getTotalProduction() * 1.0 / buffer.getTotalConsumption());
+		int metal = getProduction(account, planet, ResourceType.Metal, energyFactor, buffer).getTotalNet();
+		int crystal = getProduction(account, planet, ResourceType.Crystal, energyFactor, buffer).getTotalNet();
+		int deuterium = getProduction(account, planet, ResourceType.Deuterium, energyFactor, buffer).getTotalNet();
+		return new FullProduction(energy, metal, crystal, deuterium);
 	}
 
 	int getSatelliteEnergy(Account account, Planet planet);
 	long getStorage(Planet planet, ResourceType resourceType);
+
+	/**
+	 * @param account The account
+	 * @param planet The planet
+	 * @param minEnergy The minimum net energy the planet must have
+	 * @return The lowest solar plant level at which the planet, otherwise as it is, would have at least the given net energy, or -1 if
+	 *         no level would be enough
+	 */
+	int getRequiredSolarPlant(Account account, Planet planet, int minEnergy);
+
+	/**
+	 * @param account The account
+	 * @param planet The planet
+	 * @param minEnergy The minimum net energy the planet must have
+	 * @return The lowest fusion reactor level at which the planet, otherwise as it is (including its fusion reactor utilization), would
+	 *         have at least the given net energy, or -1 if no level would be enough
+	 */
+	int getRequiredFusionReactor(Account account, Planet planet, int minEnergy);
+
+	/**
+	 * @param account The account
+	 * @param planet The planet
+	 * @param minEnergy The minimum net energy the planet must have
+	 * @return The fewest solar satellites with which the planet, otherwise as it is, would have at least the given net energy, or -1 if
+	 *         no number of satellites would be enough
+	 */
+	int getRequiredSatellites(Account account, Planet planet, int minEnergy);
+
+	/**
+	 * @param planet The planet
+	 * @param resourceType The resource to store
+	 * @param capacity The amount of the resource that must fit in storage
+	 * @return The lowest level of the resource's storage building that holds at least the given amount on the planet
+	 */
+	int getRequiredStorage(Planet planet, ResourceType resourceType, long capacity);
 	int getMaxCrawlers(Account account, Planet planet);
 	int getMaxUtilization(Utilizable type, Account account, Planet planet);
 
 	UpgradeCost getUpgradeCost(Account account, RockyBody planetOrMoon, AccountUpgradeType upgrade, int fromLevel, int toLevel);
 	List<Requirement> getRequirements(AccountUpgradeType target);
 
+	/**
+	 * @param target The upgrade type
+	 * @return Every upgrade that must be built before the target can be, directly or indirectly, each with the highest level required of
+	 *         it anywhere in the requirement graph, ordered so that each upgrade comes after its own requirements
+	 */
+	List<Requirement> getRequirementClosure(AccountUpgradeType target);
+
 	int getMaxPlanets(Account account);
 	int getFields(Planet planet);
 	int getFields(Moon moon);
@@ -2,12 +2,19 @@ package org.quark.ogame.uni;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.StringReader;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -16,28 +23,346 @@ import org.qommons.io.HtmlNavigator;
 import org.qommons.io.HtmlNavigator.Tag;
 
 public class OGamePageReader {
+	/** A value that was not present in the page(s) read */
+	private static final int UNSET = Integer.MIN_VALUE;
+
+	/**
+	 * Everything read from one or more OGame pages. Pages are parsed into an import without touching the account, then
+	 * {@link #applyTo(Account, OGameRuleSet, Supplier) applied} all at once, setting only the values that are present in the pages and
+	 * differ from the account's.
+	 */
+	public static class PageImport {
+		String universeName;
+		int economySpeed = UNSET;
+		int fleetSpeed = UNSET;
+		int collectorProductionBonus = UNSET;
+		int collectorEnergyBonus = UNSET;
+		AccountClass gameClass;
+		Boolean commander;
+		Boolean admiral;
+		Boolean engineer;
+		Boolean geologist;
+		Boolean technocrat;
+		final int[] research;
+		final List<ImportedPlanet> planets;
+		final List<ImportedMoon> moons;
+
+		public PageImport() {
+			research = new int[ResearchType.values().length];
+			Arrays.fill(research, UNSET);
+			planets = new ArrayList<>();
+			moons = new ArrayList<>();
+		}
+
+		/** @return The number of planets read */
+		public int getPlanetCount() {
+			return planets.size();
+		}
+
+		/** @return The number of moons read */
+		public int getMoonCount() {
+			return moons.size();
+		}
+
+		/**
+		 * @param account The account to match the moons against
+		 * @return The number of moons read whose coordinates match one of the account's planets
+		 */
+		public int getMatchedMoonCount(Account account) {
+			int matched = 0;
+			for (ImportedMoon moon : moons) {
+				if (findPlanet(account, moon) != null) {
+					matched++;
+				}
+			}
+			return matched;
+		}
+
+		private static Planet findPlanet(Account account, ImportedMoon moon) {
+			for (Planet planet : account.getPlanets().getValues()) {
+				if (planet.getCoordinates().getGalaxy() == moon.coords[0]//
+					&& planet.getCoordinates().getSystem() == moon.coords[1]//
+					&& planet.getCoordinates().getSlot() == moon.coords[2]) {
+					return planet;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Applies the imported values to an account. Planets are matched by index, and moons by their planet's coordinates.
+		 *
+		 * @param account The account to apply the import to
+		 * @param rules The rule set to use to interpret fields
+		 * @param createPlanet Creates a new planet in the account if the import has more planets than the account
+		 * @return The number of planets imported
+		 */
+		public int applyTo(Account account, OGameRuleSet rules, Supplier<Planet> createPlanet) {
+			if (universeName != null && !universeName.equals(account.getUniverse().getName())) {
+				account.getUniverse().setName(universeName);
+			}
+			if (economySpeed != UNSET) {
+				if (account.getUniverse().getEconomySpeed() != economySpeed) {
+					account.getUniverse().setEconomySpeed(economySpeed);
+				}
+				if (economySpeed > 1 && account.getUniverse().getResearchSpeed() <= 1) {
+					account.getUniverse().setResearchSpeed(economySpeed);
+				}
+			}
+			if (fleetSpeed != UNSET && account.getUniverse().getFleetSpeed() != fleetSpeed) {
+				account.getUniverse().setFleetSpeed(fleetSpeed);
+			}
+			if (gameClass != null && account.getGameClass() != gameClass) {
+				account.setGameClass(gameClass);
+			}
+			if (collectorProductionBonus != UNSET && account.getUniverse().getCollectorProductionBonus() != collectorProductionBonus) {
+				account.getUniverse().setCollectorProductionBonus(collectorProductionBonus);
+			}
+			if (collectorEnergyBonus != UNSET && account.getUniverse().getCollectorEnergyBonus() != collectorEnergyBonus) {
+				account.getUniverse().setCollectorEnergyBonus(collectorEnergyBonus);
+			}
+			Officers officers = account.getOfficers();
+			if (commander != null && officers.isCommander() != commander) {
+				officers.setCommander(commander);
+			}
+			if (admiral != null && officers.isAdmiral() != admiral) {
+				officers.setAdmiral(admiral);
+			}
+			if (engineer != null && officers.isEngineer() != engineer) {
+				officers.setEngineer(engineer);
+			}
+			if (geologist != null && officers.isGeologist() != geologist) {
+				officers.setGeologist(geologist);
+			}
+			if (technocrat != null && officers.isTechnocrat() != technocrat) {
+				officers.setTechnocrat(technocrat);
+			}
+			for (ResearchType type : ResearchType.values()) {
+				int level = research[type.ordinal()];
+				if (level != UNSET && account.getResearch().getResearchLevel(type) != level) {
+					account.getResearch().setResearchLevel(type, level);
+				}
+			}
+
+			for (int i = 0; i < planets.size(); i++) {
+				Planet planet;
+				if (i == account.getPlanets().getValues().size()) {
+					planet = createPlanet.get();
+				} else {
+					planet = account.getPlanets().getValues().get(i);
+				}
+				planets.get(i).applyTo(planet, rules);
+			}
+			for (ImportedMoon moon : moons) {
+				Planet planet = findPlanet(account, moon);
+				if (planet != null) {
+					moon.applyTo(planet.getMoon(), rules);
+				}
+			}
+			return planets.size();
+		}
+	}
+
+	/** The buildings and ships read for a planet or moon */
+	static class ImportedBody {
+		String name;
+		BuildingType currentUpgrade;
+		final int[] buildings;
+		final int[] ships;
+
+		ImportedBody() {
+			buildings = new int[BuildingType.values().length];
+			Arrays.fill(buildings, UNSET);
+			ships = new int[ShipyardItemType.values().length];
+			Arrays.fill(ships, UNSET);
+		}
+
+		void applyTo(RockyBody body) {
+			if (name != null && !name.equals(body.getName())) {
+				body.setName(name);
+			}
+			if (currentUpgrade != null && body.getCurrentUpgrade() != currentUpgrade) {
+				body.setCurrentUpgrade(currentUpgrade);
+			}
+			for (BuildingType type : BuildingType.values()) {
+				int level = buildings[type.ordinal()];
+				if (level != UNSET && body.getBuildingLevel(type) != level) {
+					body.setBuildingLevel(type, level);
+				}
+			}
+			for (ShipyardItemType type : ShipyardItemType.values()) {
+				int count = ships[type.ordinal()];
+				if (count != UNSET && body.getStationedShips(type) != count) {
+					body.setStationedShips(type, count);
+				}
+			}
+		}
+	}
+
+	/** The values read for a planet */
+	static class ImportedPlanet extends ImportedBody {
+		int[] coords;
+		/** The total number of fields of the planet, including those from the terraformer */
+		int fields = UNSET;
+		int minTemp = UNSET;
+		int maxTemp = UNSET;
+		int metalBonus = UNSET;
+		int crystalBonus = UNSET;
+		int deuteriumBonus = UNSET;
+
+		void applyTo(Planet planet, OGameRuleSet rules) {
+			super.applyTo(planet);
+			if (coords != null && (planet.getCoordinates().getGalaxy() != coords[0] || planet.getCoordinates().getSystem() != coords[1]
+				|| planet.getCoordinates().getSlot() != coords[2])) {
+				planet.getCoordinates().set(coords[0], coords[1], coords[2]);
+			}
+			if (fields != UNSET) {
+				// The page shows the total fields, but we store the base fields
+				int terraformerFields = rules.economy().getFields(planet) - planet.getBaseFields();
+				if (planet.getBaseFields() != fields - terraformerFields) {
+					planet.setBaseFields(fields - terraformerFields);
+				}
+			}
+			if (minTemp != UNSET && planet.getMinimumTemperature() != minTemp) {
+				planet.setMinimumTemperature(minTemp);
+			}
+			if (maxTemp != UNSET && planet.getMaximumTemperature() != maxTemp) {
+				planet.setMaximumTemperature(maxTemp);
+			}
+			if (metalBonus != UNSET && planet.getMetalBonus() != metalBonus) {
+				planet.setMetalBonus(metalBonus);
+			}
+			if (crystalBonus != UNSET && planet.getCrystalBonus() != crystalBonus) {
+				planet.setCrystalBonus(crystalBonus);
+			}
+			if (deuteriumBonus != UNSET && planet.getDeuteriumBonus() != deuteriumBonus) {
+				planet.setDeuteriumBonus(deuteriumBonus);
+			}
+		}
+	}
+
+	/** The values read for a moon */
+	static class ImportedMoon extends ImportedBody {
+		/** The coordinates of the moon, by which it is matched to its planet */
+		final int[] coords;
+		/** The total number of fields of the moon */
+		int fields = UNSET;
+
+		ImportedMoon(int[] coords) {
+			this.coords = coords;
+		}
+
+		void applyTo(Moon moon, OGameRuleSet rules) {
+			super.applyTo(moon);
+			if (fields != UNSET) {
+				// The page shows the total fields, but we store the bonus fields
+				int baseFields = rules.economy().getFields(moon) - moon.getFieldBonus();
+				int fieldBonus = Math.min(0, fields - baseFields);
+				if (moon.getFieldBonus() != fieldBonus) {
+					moon.setFieldBonus(fieldBonus);
+				}
+			}
+		}
+	}
+
 	public static int readEmpireView(Account account, Reader reader, OGameRuleSet rules, Supplier<Planet> createPlanet) throws IOException {
+		return parseEmpireView(new PageImport(), reader).applyTo(account, rules, createPlanet);
+	}
+
+	public static void readEmpireMoonView(Account account, OGameRuleSet rules, Reader reader) throws IOException {
+		parseEmpireMoonView(new PageImport(), reader).applyTo(account, rules, null);
+	}
+
+	public static int readOverview(Account account, Reader reader, OGameRuleSet rules, Supplier<Planet> createPlanet) throws IOException {
+		return parseOverview(new PageImport(), reader).applyTo(account, rules, createPlanet);
+	}
+
+	/**
+	 * @param imported The import to parse the planets of an empire view into
+	 * @param file The saved empire view to read
+	 * @return The import
+	 * @throws IOException If the page could not be read
+	 */
+	public static PageImport parseEmpireView(PageImport imported, Path file) throws IOException {
+		try (Reader reader = openPage(file)) {
+			return parseEmpireView(imported, reader);
+		}
+	}
+
+	/**
+	 * @param imported The import to parse the moons of an empire view into
+	 * @param file The saved moon empire view to read
+	 * @return The import
+	 * @throws IOException If the page could not be read
+	 */
+	public static PageImport parseEmpireMoonView(PageImport imported, Path file) throws IOException {
+		try (Reader reader = openPage(file)) {
+			return parseEmpireMoonView(imported, reader);
+		}
+	}
+
+	/**
+	 * @param imported The import to parse the account settings and planets of an overview page into
+	 * @param file The saved overview page to read
+	 * @return The import
+	 * @throws IOException If the page could not be read
+	 */
+	public static PageImport parseOverview(PageImport imported, Path file) throws IOException {
+		try (Reader reader = openPage(file)) {
+			return parseOverview(imported, reader);
+		}
+	}
+
+	/**
+	 * Opens a saved page for streaming. The page is decoded as it is parsed, so memory use does not depend on the size of the page.
+	 *
+	 * @param file The saved page
+	 * @return A reader for the page's content
+	 * @throws IOException If the file could not be opened
+	 */
+	public static Reader openPage(Path file) throws IOException {
+		return new BufferedReader(new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8), PAGE_BUFFER_SIZE);
+	}
+
+	/**
+	 * Opens a saved page that has already been read into memory
+	 *
+	 * @param content The bytes of the saved page
+	 * @return A reader for the page's content
+	 */
+	public static Reader openPage(byte[] content) {
+		return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8), PAGE_BUFFER_SIZE);
+	}
+
+	/** The size of the buffer to read saved pages with */
+	private static final int PAGE_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * @param imported The import to parse the planets of an empire view into
+	 * @param reader The reader to read the empire view's HTML from
+	 * @return The import
+	 * @throws IOException If the page could not be read
+	 */
+	public static PageImport parseEmpireView(PageImport imported, Reader reader) throws IOException {
 		HtmlNavigator nav = new HtmlNavigator(reader);
-		int planetIdx = 0;
 		while (nav.find("div", "planet") != null) {
 			if (nav.getTop().getClasses().contains("summary")) {
 				continue;
 			}
-			Planet planet;
-			if (planetIdx == account.getPlanets().getValues().size()) {
-				planet = createPlanet.get();
-			} else {
-				planet = account.getPlanets().getValues().get(planetIdx);
-			}
-			parsePlanet(account, planet, nav);
-			int terraformerDiff = rules.economy().getFields(planet) - planet.getBaseFields();
-			planet.setBaseFields(planet.getBaseFields() - terraformerDiff);
-			planetIdx++;
+			ImportedPlanet planet = new ImportedPlanet();
+			parsePlanet(imported, planet, nav);
+			imported.planets.add(planet);
 		}
-		return planetIdx;
+		return imported;
 	}
 
-	public static void readEmpireMoonView(Account account, OGameRuleSet rules, Reader reader) throws IOException {
+	/**
+	 * @param imported The import to parse the moons of an empire view into
+	 * @param reader The reader to read the moon empire view's HTML from
+	 * @return The import
+	 * @throws IOException If the page could not be read
+	 */
+	public static PageImport parseEmpireMoonView(PageImport imported, Reader reader) throws IOException {
 		HtmlNavigator nav = new HtmlNavigator(reader);
 		while (nav.find("div", "planet") != null) {
 			if (nav.getTop().getClasses().contains("summary")) {
@@ -47,22 +372,26 @@ public class OGamePageReader {
 			if (tag == null) {
 				continue;
 			}
-			Moon moon = parseMoonHead(account, nav);
+			ImportedMoon moon = parseMoonHead(nav);
 			if (moon != null) {
-				parsePlanet(account, moon, nav);
-				int totalFields = moon.getFieldBonus();
-				moon.setFieldBonus(0);
-				moon.setFieldBonus(Math.min(0, totalFields - rules.economy().getFields(moon)));
+				parsePlanet(imported, moon, nav);
+				imported.moons.add(moon);
 			}
 		}
+		return imported;
 	}
 
-	public static int readOverview(Account account, Reader reader, OGameRuleSet rules, Supplier<Planet> createPlanet) throws IOException {
+	/**
+	 * @param imported The import to parse the account settings and planets of an overview page into
+	 * @param reader The reader to read the overview's HTML from
+	 * @return The import
+	 * @throws IOException If the page could not be read
+	 */
+	public static PageImport parseOverview(PageImport imported, Reader reader) throws IOException {
 		HtmlNavigator nav = new HtmlNavigator(reader);
-		int planetIdx = 0;
 		Tag head;
 		if ((head = nav.find("head")) == null) {
-			return 0;
+			return imported;
 		}
 		Tag meta;
 		while ((meta = nav.find("meta")) != null) {
@@ -73,17 +402,13 @@ public class OGamePageReader {
 			}
 			switch (metaName) {
 			case "ogame-universe-name":
-				account.getUniverse().setName(content);
+				imported.universeName = content;
 				break;
 			case "ogame-universe-speed":
-				int speed = Integer.parseInt(content);
-				account.getUniverse().setEconomySpeed(speed);
-				if (speed > 1 && account.getUniverse().getResearchSpeed() <= 1) {
-					account.getUniverse().setResearchSpeed(speed);
-				}
+				imported.economySpeed = Integer.parseInt(content);
 				break;
 			case "ogame-universe-speed-fleet":
-				account.getUniverse().setFleetSpeed(Integer.parseInt(content));
+				imported.fleetSpeed = Integer.parseInt(content);
 				break;
 			}
 		}
@@ -98,14 +423,14 @@ public class OGamePageReader {
 				String className = getNextWord(title, idx + "class:".length()).toLowerCase();
 				switch (className) {
 				case "collector":
-					account.setGameClass(AccountClass.Collector);
+					imported.gameClass = AccountClass.Collector;
 					idx = title.indexOf("% mine production");
 					if (idx >= 0) {
 						int lastIdx = idx;
 						while (idx >= 0 && Character.isDigit(title.charAt(idx - 1))) {
 							idx--;
 						}
-						account.getUniverse().setCollectorProductionBonus(Integer.parseInt(title.substring(idx, lastIdx)));
+						imported.collectorProductionBonus = Integer.parseInt(title.substring(idx, lastIdx));
 					}
 					idx = title.indexOf("% energy");
 					if (idx >= 0) {
@@ -113,14 +438,14 @@ public class OGamePageReader {
 						while (idx >= 0 && Character.isDigit(title.charAt(idx - 1))) {
 							idx--;
 						}
-						account.getUniverse().setCollectorEnergyBonus(Integer.parseInt(title.substring(idx, lastIdx)));
+						imported.collectorEnergyBonus = Integer.parseInt(title.substring(idx, lastIdx));
 					}
 					break;
 				case "general":
-					account.setGameClass(AccountClass.General);
+					imported.gameClass = AccountClass.General;
 					break;
 				case "discoverer":
-					account.setGameClass(AccountClass.Discoverer);
+					imported.gameClass = AccountClass.Discoverer;
 					break;
 				}
 			}
@@ -130,16 +455,17 @@ public class OGamePageReader {
 		if (tag != null) {
 			Tag officerTag = nav.find("a");
 			while (officerTag != null) {
+				Boolean active = officerTag.getAttributes().get("title").contains("active");
 				if (officerTag.getClasses().contains("commander")) {
-					account.getOfficers().setCommander(officerTag.getAttributes().get("title").contains("active"));
+					imported.commander = active;
 				} else if (officerTag.getClasses().contains("admiral")) {
-					account.getOfficers().setAdmiral(officerTag.getAttributes().get("title").contains("active"));
+					imported.admiral = active;
 				} else if (officerTag.getClasses().contains("engineer")) {
-					account.getOfficers().setEngineer(officerTag.getAttributes().get("title").contains("active"));
+					imported.engineer = active;
 				} else if (officerTag.getClasses().contains("geologist")) {
-					account.getOfficers().setGeologist(officerTag.getAttributes().get("title").contains("active"));
+					imported.geologist = active;
 				} else if (officerTag.getClasses().contains("technocrat")) {
-					account.getOfficers().setTechnocrat(officerTag.getAttributes().get("title").contains("active"));
+					imported.technocrat = active;
 				}
 				nav.close(officerTag);
 				officerTag = nav.find("a");
@@ -150,34 +476,28 @@ public class OGamePageReader {
 			nav.close(nav.getTop());
 		}
 		if (nav.find(t -> t.getName().equals("div") && "planetList".equals(t.getAttributes().get("id"))) == null) {
-			return 0;
+			return imported;
 		}
 		while (nav.find("div", "smallplanet") != null) {
-			Planet planet;
-			if (planetIdx == account.getPlanets().getValues().size()) {
-				planet = createPlanet.get();
-			} else {
-				planet = account.getPlanets().getValues().get(planetIdx);
-			}
-			parsePlanetFromOverview(account, planet, nav);
-			int terraformerDiff = rules.economy().getFields(planet) - planet.getBaseFields();
-			planet.setBaseFields(planet.getBaseFields() - terraformerDiff);
-			planetIdx++;
+			ImportedPlanet planet = new ImportedPlanet();
+			parsePlanetFromOverview(planet, nav);
+			imported.planets.add(planet);
 		}
-		return planetIdx;
+		return imported;
 	}
 
 	private static final Pattern FIELDS_PATTERN = Pattern.compile("/(?<fields>\\d+)\\)");
-	private static final Pattern TEMP_PATTERN = Pattern.compile("(?<minTemp>\\-?\\d+)\u00b0C to (?<maxTemp>\\-?\\d+)\u00b0C");
+	private static final Pattern TEMP_PATTERN = Pattern//
+		.compile("(?<minTemp>\\-?\\d+)(?:\u00b0|&deg;|&#176;)C to (?<maxTemp>\\-?\\d+)(?:\u00b0|&deg;|&#176;)C");
 
-	private static void parsePlanet(Account account, RockyBody place, HtmlNavigator reader) throws IOException {
+	private static void parsePlanet(PageImport account, ImportedBody place, HtmlNavigator reader) throws IOException {
 		Tag tag = reader.descend();
 		while (tag != null) {
 			if (tag.matches("div")) {
-				if (place instanceof Planet && tag.getClasses().contains("planetHead")) {
-					parsePlanetHead((Planet) place, reader);
-				} else if (place instanceof Planet && tag.getClasses().contains("items")) {
-					parseItems((Planet) place, reader);
+				if (place instanceof ImportedPlanet && tag.getClasses().contains("planetHead")) {
+					parsePlanetHead((ImportedPlanet) place, reader);
+				} else if (place instanceof ImportedPlanet && tag.getClasses().contains("items")) {
+					parseItems((ImportedPlanet) place, reader);
 				} else if (tag.getClasses().contains("supply")) {
 					parseBuildings(place, "supply", reader);
 				} else if (tag.getClasses().contains("station")) {
@@ -195,40 +515,36 @@ public class OGamePageReader {
 		}
 	}
 
-	private static void parsePlanetFromOverview(Account account, Planet planet, HtmlNavigator reader) throws IOException {
+	private static void parsePlanetFromOverview(ImportedPlanet planet, HtmlNavigator reader) throws IOException {
 		Tag planetTag = reader.getTop();
 		Tag classTag = reader.find("a", "planetlink");
 		Tag tag;
 		if (classTag != null) {
+			// The title is escaped HTML, but the fields and temperature are each in a single text run,
+			// so they can be matched in the raw attribute without unescaping or parsing it
 			String title = classTag.getAttributes().get("title");
-			title = title.replaceAll("&lt;", "<").replaceAll("&gt;", ">");
-			HtmlNavigator titleNav = new HtmlNavigator(new StringReader(title));
-			boolean hasFields = false, hasTemp = false;
-			while (!titleNav.isDone() && (!hasFields || !hasTemp)) {
-				titleNav.descend();
-				Matcher m = FIELDS_PATTERN.matcher(titleNav.getLastContent());
+			if (title != null) {
+				Matcher m = FIELDS_PATTERN.matcher(title);
 				if (m.find()) {
-					planet.setBaseFields(Integer.parseInt(m.group("fields")));
-					hasFields = true;
+					planet.fields = Integer.parseInt(m.group("fields"));
 				}
-				m = TEMP_PATTERN.matcher(titleNav.getLastContent());
+				m = TEMP_PATTERN.matcher(title);
 				if (m.find()) {
-					planet.setMinimumTemperature(Integer.parseInt(m.group("minTemp")))//
-						.setMaximumTemperature(Integer.parseInt(m.group("maxTemp")));
-					hasTemp = true;
+					planet.minTemp = Integer.parseInt(m.group("minTemp"));
+					planet.maxTemp = Integer.parseInt(m.group("maxTemp"));
 				}
 			}
 			tag = reader.find("span", "planet-name");
 			if (tag != null) {
 				reader.close(tag);
-				planet.setName(reader.getLastContent());
+				planet.name = reader.getLastContent();
 			}
 			tag = reader.find("span", "planet-koords");
 			if (tag != null) {
 				reader.close(tag);
 				int[] coords = tryParseCoords(reader.getLastContent());
 				if (coords != null) {
-					planet.getCoordinates().set(coords[0], coords[1], coords[2]);
+					planet.coords = coords;
 				}
 			}
 			reader.close(classTag);
@@ -237,52 +553,52 @@ public class OGamePageReader {
 		if (classTag != null) {
 			switch (classTag.getAttributes().get("title")) {
 			case "Metal Mine":
-				planet.setCurrentUpgrade(BuildingType.MetalMine);
+				planet.currentUpgrade = BuildingType.MetalMine;
 				break;
 			case "Crystal Mine":
-				planet.setCurrentUpgrade(BuildingType.CrystalMine);
+				planet.currentUpgrade = BuildingType.CrystalMine;
 				break;
 			case "Deuterium Synthesizer":
-				planet.setCurrentUpgrade(BuildingType.DeuteriumSynthesizer);
+				planet.currentUpgrade = BuildingType.DeuteriumSynthesizer;
 				break;
 			case "Solar Plant":
-				planet.setCurrentUpgrade(BuildingType.SolarPlant);
+				planet.currentUpgrade = BuildingType.SolarPlant;
 				break;
 			case "Fusion Reactor":
-				planet.setCurrentUpgrade(BuildingType.FusionReactor);
+				planet.currentUpgrade = BuildingType.FusionReactor;
 				break;
 			case "Metal Storage":
-				planet.setCurrentUpgrade(BuildingType.MetalStorage);
+				planet.currentUpgrade = BuildingType.MetalStorage;
 				break;
 			case "Crystal Storage":
-				planet.setCurrentUpgrade(BuildingType.CrystalStorage);
+				planet.currentUpgrade = BuildingType.CrystalStorage;
 				break;
 			case "Deuterium Tank":
-				planet.setCurrentUpgrade(BuildingType.DeuteriumStorage);
+				planet.currentUpgrade = BuildingType.DeuteriumStorage;
 				break;
 			case "Robotics Factory":
-				planet.setCurrentUpgrade(BuildingType.RoboticsFactory);
+				planet.currentUpgrade = BuildingType.RoboticsFactory;
 				break;
 			case "Shipyard":
-				planet.setCurrentUpgrade(BuildingType.Shipyard);
+				planet.currentUpgrade = BuildingType.Shipyard;
 				break;
 			case "Research Lab":
-				planet.setCurrentUpgrade(BuildingType.ResearchLab);
+				planet.currentUpgrade = BuildingType.ResearchLab;
 				break;
 			case "Alliance Depot":
-				planet.setCurrentUpgrade(BuildingType.AllianceDepot);
+				planet.currentUpgrade = BuildingType.AllianceDepot;
 				break;
 			case "Missile Silo":
-				planet.setCurrentUpgrade(BuildingType.MissileSilo);
+				planet.currentUpgrade = BuildingType.MissileSilo;
 				break;
 			case "Nanite Factory":
-				planet.setCurrentUpgrade(BuildingType.NaniteFactory);
+				planet.currentUpgrade = BuildingType.NaniteFactory;
 				break;
 			case "Terraformer":
-				planet.setCurrentUpgrade(BuildingType.Terraformer);
+				planet.currentUpgrade = BuildingType.Terraformer;
 				break;
 			case "Space Dock":
-				planet.setCurrentUpgrade(BuildingType.SpaceDock);
+				planet.currentUpgrade = BuildingType.SpaceDock;
 				break;
 			}
 			reader.close(classTag);
@@ -303,25 +619,42 @@ public class OGamePageReader {
 		return str.toString();
 	}
 
+	/**
+	 * Parses the first integer in text, ignoring '.' thousands separators, without creating any intermediate strings
+	 *
+	 * @param content The text to parse
+	 * @return The first integer in the text, or -1 if there is none
+	 * @throws NumberFormatException If the integer is too large for an int
+	 */
 	private static int parseFirstInt(String content) {
-		content = content.trim().replaceAll("\\.", "");
-		int start, end;
-		for (start = 0; start < content.length() && !Character.isDigit(content.charAt(start)); start++) {}
-		for (end = start; end < content.length() && Character.isDigit(content.charAt(end)); end++) {}
-		if (start != end) {
-			return Integer.parseInt(content.substring(start, end));
-		} else {
+		int i;
+		for (i = 0; i < content.length() && !Character.isDigit(content.charAt(i)); i++) {}
+		if (i == content.length()) {
 			return -1;
 		}
+		int start = i;
+		long value = 0;
+		for (; i < content.length(); i++) {
+			char c = content.charAt(i);
+			if (c >= '0' && c <= '9') {
+				value = value * 10 + (c - '0');
+				if (value > Integer.MAX_VALUE) {
+					throw new NumberFormatException("Value too large: " + content.substring(start));
+				}
+			} else if (c != '.') {
+				break;
+			}
+		}
+		return (int) value;
 	}
 
-	private static void parsePlanetHead(Planet planet, HtmlNavigator reader) throws IOException {
+	private static void parsePlanetHead(ImportedPlanet planet, HtmlNavigator reader) throws IOException {
 		Tag tag = reader.descend();
 		while (tag != null) {
 			if (tag.matches("div")) {
 				if (tag.getClasses().contains("planetname")) {
 					reader.close(tag);
-					planet.setName(reader.getLastContent());
+					planet.name = reader.getLastContent();
 				} else if (tag.getClasses().contains("planetData")) {
 					parsePlanetData(planet, reader);
 				}
@@ -331,8 +664,8 @@ public class OGamePageReader {
 		}
 	}
 
-	private static Moon parseMoonHead(Account account, HtmlNavigator reader) throws IOException {
-		Moon moon = null;
+	private static ImportedMoon parseMoonHead(HtmlNavigator reader) throws IOException {
+		ImportedMoon moon = null;
 		String moonName = null;
 		Tag tag = reader.descend();
 		while (tag != null) {
@@ -341,9 +674,9 @@ public class OGamePageReader {
 					reader.close(tag);
 					moonName = reader.getLastContent();
 				} else if (tag.getClasses().contains("planetData")) {
-					moon = parseMoonData(account, reader);
+					moon = parseMoonData(reader);
 					if (moon != null && moonName != null) {
-						moon.setName(moonName);
+						moon.name = moonName;
 					}
 				}
 			}
@@ -353,7 +686,7 @@ public class OGamePageReader {
 		return moon;
 	}
 
-	private static void parsePlanetData(Planet planet, HtmlNavigator reader) throws IOException {
+	private static void parsePlanetData(ImportedPlanet planet, HtmlNavigator reader) throws IOException {
 		Tag tag = reader.descend();
 		while (tag != null) {
 			if (tag.matches("div", "planetDataTop")) {
@@ -364,12 +697,12 @@ public class OGamePageReader {
 							String content = reader.getEmphasizedContent();
 							int[] coords = tryParseCoords(content.trim());
 							if (coords != null) {
-								planet.getCoordinates().set(coords[0], coords[1], coords[2]);
+								planet.coords = coords;
 							}
 						} else if (li.getClasses().contains("fields")) {
 							int fields = parseFields(reader.getEmphasizedContent());
 							if (fields > 0) {
-								planet.setBaseFields(fields);
+								planet.fields = fields;
 							}
 						}
 						li = reader.find("li");
@@ -388,9 +721,9 @@ public class OGamePageReader {
 		}
 	}
 
-	private static Moon parseMoonData(Account account, HtmlNavigator reader) throws IOException {
+	private static ImportedMoon parseMoonData(HtmlNavigator reader) throws IOException {
 		Tag tag = reader.descend();
-		Moon moon = null;
+		int[] moonCoords = null;
 		int fields = -1;
 		while (tag != null) {
 			if (tag.matches("div", "planetDataTop")) {
@@ -401,14 +734,7 @@ public class OGamePageReader {
 							String content = reader.getEmphasizedContent();
 							int[] coords = tryParseCoords(content.trim());
 							if (coords != null) {
-								for (Planet planet : account.getPlanets().getValues()) {
-									if (planet.getCoordinates().getGalaxy() == coords[0]//
-										&& planet.getCoordinates().getSystem() == coords[1]//
-										&& planet.getCoordinates().getSlot() == coords[2]) {
-										moon = planet.getMoon();
-										break;
-									}
-								}
+								moonCoords = coords;
 							}
 						} else if (li.getClasses().contains("fields")) {
 							fields = parseFields(reader.getEmphasizedContent());
@@ -420,8 +746,12 @@ public class OGamePageReader {
 			reader.close(tag);
 			tag = reader.descend();
 		}
-		if (moon != null && fields > 0) {
-			moon.setFieldBonus(fields);
+		if (moonCoords == null) {
+			return null;
+		}
+		ImportedMoon moon = new ImportedMoon(moonCoords);
+		if (fields > 0) {
+			moon.fields = fields;
 		}
 		return moon;
 	}
@@ -447,7 +777,7 @@ public class OGamePageReader {
 		}
 	}
 
-	private static void parseTemperature(Planet planet, String tempText) {
+	private static void parseTemperature(ImportedPlanet planet, String tempText) {
 		tempText = tempText.trim();
 		int i = 0;
 		if (tempText.charAt(0) == '-') {
@@ -458,12 +788,12 @@ public class OGamePageReader {
 		}
 		if (i > 0) {
 			int minTemp = Integer.parseInt(tempText.substring(0, i));
-			planet.setMinimumTemperature(minTemp);
-			planet.setMaximumTemperature(minTemp + 40);
+			planet.minTemp = minTemp;
+			planet.maxTemp = minTemp + 40;
 		}
 	}
 
-	private static void parseItems(Planet planet, HtmlNavigator reader) throws IOException {
+	private static void parseItems(ImportedPlanet planet, HtmlNavigator reader) throws IOException {
 		int metalBonus = 0, crystalBonus = 0, deutBonus = 0;
 		Tag tag = reader.descend();
 		while (tag != null) {
@@ -496,10 +826,12 @@ public class OGamePageReader {
 			reader.close(tag);
 			tag = reader.descend();
 		}
-		planet.setMetalBonus(metalBonus).setCrystalBonus(crystalBonus).setDeuteriumBonus(deutBonus);
+		planet.metalBonus = metalBonus;
+		planet.crystalBonus = crystalBonus;
+		planet.deuteriumBonus = deutBonus;
 	}
 
-	private static void parseBuildings(RockyBody place, String buildingClass, HtmlNavigator reader) throws IOException {
+	private static void parseBuildings(ImportedBody place, String buildingClass, HtmlNavigator reader) throws IOException {
 		Tag tag = reader.descend();
 		while (tag != null) {
 			int id;
@@ -514,7 +846,7 @@ public class OGamePageReader {
 		}
 	}
 
-	private static void parseShipyardItems(RockyBody place, String itemClass, HtmlNavigator reader) throws IOException {
+	private static void parseShipyardItems(ImportedBody place, String itemClass, HtmlNavigator reader) throws IOException {
 		Tag tag = reader.descend();
 		while (tag != null) {
 			int id;
@@ -529,7 +861,7 @@ public class OGamePageReader {
 		}
 	}
 
-	private static void parseResearch(Account account, HtmlNavigator reader) throws IOException {
+	private static void parseResearch(PageImport account, HtmlNavigator reader) throws IOException {
 		Tag tag = reader.descend();
 		while (tag != null) {
 			int id;
@@ -559,7 +891,7 @@ public class OGamePageReader {
 		return -1;
 	}
 
-	private static void setBuilding(RockyBody place, int buildingNumber, int level) {
+	private static void setBuilding(ImportedBody place, int buildingNumber, int level) {
 		BuildingType type = null;
 
 		switch (buildingNumber) {
@@ -622,13 +954,13 @@ public class OGamePageReader {
 			break;
 		}
 		if (type != null) {
-			place.setBuildingLevel(type, level);
+			place.buildings[type.ordinal()] = level;
 		} else {
 			System.err.println("Unrecognized building ID: " + buildingNumber);
 		}
 	}
 
-	private static void setShipyardItem(RockyBody place, int structureId, int count) {
+	private static void setShipyardItem(ImportedBody place, int structureId, int count) {
 		ShipyardItemType type = null;
 		switch (structureId) {
 		case 202:
@@ -716,13 +1048,13 @@ public class OGamePageReader {
 			break;
 		}
 		if (type != null) {
-			place.setStationedShips(type, count);
+			place.ships[type.ordinal()] = count;
 		} else {
 			System.err.println("Unrecognized shipyard item ID: " + structureId);
 		}
 	}
 
-	private static void setResearch(Account account, int researchId, int level) {
+	private static void setResearch(PageImport account, int researchId, int level) {
 		ResearchType type = null;
 		switch (researchId) {
 		case 106:
@@ -775,7 +1107,7 @@ public class OGamePageReader {
 			break;
 		}
 		if (type != null) {
-			account.getResearch().setResearchLevel(type, level);
+			account.research[type.ordinal()] = level;
 		} else {
 			System.err.println("Unrecognized research ID: " + researchId);
 		}
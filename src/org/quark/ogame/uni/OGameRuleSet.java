@@ -2,6 +2,10 @@ package org.quark.ogame.uni;
 
 import org.qommons.Named;
 
+/**
+ * The rules of an OGame version. Implementations, along with their {@link #economy() economy} and {@link #fleet() fleet} rules, must be
+ * thread-safe, since one rule set is shared by the UI and any number of background simulations.
+ */
 public interface OGameRuleSet extends Named {
 	OGameEconomyRuleSet economy();
 
@@ -0,0 +1,353 @@
+package org.quark.ogame.uni;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ * Plans the merchant trades needed to start each upgrade in an ordered queue as early as possible.
+ * </p>
+ * <p>
+ * Since any resource can be traded for any other at the merchant's ratios, an upgrade can start as soon as the trade value of the
+ * resources on hand covers the trade value of its cost and it is not ahead of the upgrade before it in the queue. This is solved greedily
+ * along the queue: each upgrade's start time follows directly from the resources left over by the previous one and the production rate,
+ * and at that time just enough of the surplus resources are traded to cover any shortfall, using a single trade whenever one surplus
+ * resource can cover it. Trades for upgrades that start at the same time are combined.
+ * </p>
+ * <p>
+ * The solution for each upgrade is kept, so changing one upgrade only re-solves the queue from that upgrade on. This class is not
+ * thread-safe.
+ * </p>
+ */
+public class TradePlanner {
+	private static final int METAL = 0;
+	private static final int CRYSTAL = 1;
+	private static final int DEUTERIUM = 2;
+	private static final ResourceType[] RESOURCES = { ResourceType.Metal, ResourceType.Crystal, ResourceType.Deuterium };
+
+	/** A trade to make with the merchant */
+	public static class PlannedTrade {
+		/** The index in the queue of the first upgrade this trade is for */
+		public final int upgrade;
+		/** The time from now at which to make the trade */
+		public final Duration time;
+		/** The resource given in the trade */
+		public final ResourceType type;
+		/** The change in each resource from the trade, negative for the resource given */
+		public final long metal;
+		public final long crystal;
+		public final long deuterium;
+
+		PlannedTrade(int upgrade, Duration time, ResourceType type, long metal, long crystal, long deuterium) {
+			this.upgrade = upgrade;
+			this.time = time;
+			this.type = type;
+			this.metal = metal;
+			this.crystal = crystal;
+			this.deuterium = deuterium;
+		}
+
+		/** @return The first of the resources received in the trade, in the order of {@link Trade#getResource1()} */
+		public long getResource1() {
+			return type == ResourceType.Metal ? crystal : metal;
+		}
+
+		/** @return The second of the resources received in the trade, in the order of {@link Trade#getResource2()} */
+		public long getResource2() {
+			return type == ResourceType.Deuterium ? crystal : deuterium;
+		}
+
+		PlannedTrade plus(PlannedTrade other) {
+			return new PlannedTrade(upgrade, time, type, metal + other.metal, crystal + other.crystal, deuterium + other.deuterium);
+		}
+
+		@Override
+		public String toString() {
+			return type + " trade at " + time + " for upgrade " + upgrade + ": " + metal + "/" + crystal + "/" + deuterium;
+		}
+	}
+
+	private static class Stage {
+		final long[] cost = new long[3];
+		/** The upgrade's start time in hours from now, or infinity if it can never start */
+		double start;
+		/** The resources left after starting the upgrade */
+		final double[] after = new double[3];
+		final List<PlannedTrade> trades = new ArrayList<>(2);
+	}
+
+	private final List<Stage> theStages;
+	/** The number of stages at the front of the queue whose solution is current */
+	private int theSolved;
+	private final double[] theHoldings;
+	private final double[] theProduction;
+	private final double[] theRatios;
+
+	/** Creates an empty planner with no holdings, production or trade ratios */
+	public TradePlanner() {
+		theStages = new ArrayList<>();
+		theHoldings = new double[3];
+		theProduction = new double[3];
+		theRatios = new double[] { 1, 1, 1 };
+	}
+
+	/** @return The number of upgrades in the queue */
+	public int size() {
+		return theStages.size();
+	}
+
+	/**
+	 * @param metal The metal available now
+	 * @param crystal The crystal available now
+	 * @param deuterium The deuterium available now
+	 * @return This planner
+	 */
+	public TradePlanner setHoldings(long metal, long crystal, long deuterium) {
+		if (set(theHoldings, metal, crystal, deuterium)) {
+			theSolved = 0;
+		}
+		return this;
+	}
+
+	/**
+	 * @param metalPerHour The net metal production of the account
+	 * @param crystalPerHour The net crystal production of the account
+	 * @param deuteriumPerHour The net deuterium production of the account
+	 * @return This planner
+	 */
+	public TradePlanner setProduction(double metalPerHour, double crystalPerHour, double deuteriumPerHour) {
+		if (set(theProduction, metalPerHour, crystalPerHour, deuteriumPerHour)) {
+			theSolved = 0;
+		}
+		return this;
+	}
+
+	/**
+	 * @param ratios The merchant's trade ratios
+	 * @return This planner
+	 */
+	public TradePlanner setRatios(TradeRatios ratios) {
+		if (set(theRatios, ratios.getMetal(), ratios.getCrystal(), ratios.getDeuterium())) {
+			theSolved = 0;
+		}
+		return this;
+	}
+
+	/**
+	 * @param index The index in the queue to insert the upgrade at
+	 * @param cost The cost of the upgrade, or null if it is already paid for
+	 * @return This planner
+	 */
+	public TradePlanner add(int index, UpgradeCost cost) {
+		Stage stage = new Stage();
+		setCost(stage, cost);
+		theStages.add(index, stage);
+		theSolved = Math.min(theSolved, index);
+		return this;
+	}
+
+	/**
+	 * @param index The index in the queue of the upgrade to change
+	 * @param cost The new cost of the upgrade, or null if it is already paid for
+	 * @return This planner
+	 */
+	public TradePlanner set(int index, UpgradeCost cost) {
+		if (setCost(theStages.get(index), cost)) {
+			theSolved = Math.min(theSolved, index);
+		}
+		return this;
+	}
+
+	/**
+	 * @param index The index in the queue of the upgrade to remove
+	 * @return This planner
+	 */
+	public TradePlanner remove(int index) {
+		theStages.remove(index);
+		theSolved = Math.min(theSolved, index);
+		return this;
+	}
+
+	/**
+	 * @param index The index in the queue of the upgrade
+	 * @return The time from now at which the upgrade can start with the planned trades, or null if production will never cover it
+	 */
+	public Duration getStart(int index) {
+		solve();
+		double start = theStages.get(index).start;
+		return Double.isInfinite(start) ? null : toDuration(start);
+	}
+
+	/** @return All trades needed to start each upgrade in the queue as early as possible, in order */
+	public List<PlannedTrade> getTrades() {
+		solve();
+		List<PlannedTrade> trades = new ArrayList<>();
+		int lastSize = 0;
+		for (Stage stage : theStages) {
+			if (Double.isInfinite(stage.start)) {
+				break;
+			}
+			for (PlannedTrade trade : stage.trades) {
+				// Combine trades of the same resource made at the same time for consecutive upgrades
+				PlannedTrade merged = null;
+				for (int t = lastSize; t < trades.size(); t++) {
+					PlannedTrade prev = trades.get(t);
+					if (prev.type == trade.type && prev.time.equals(trade.time)) {
+						merged = prev.plus(trade);
+						trades.set(t, merged);
+						break;
+					}
+				}
+				if (merged == null) {
+					if (!trades.isEmpty() && !trades.get(trades.size() - 1).time.equals(trade.time)) {
+						lastSize = trades.size();
+					}
+					trades.add(trade);
+				}
+			}
+		}
+		return Collections.unmodifiableList(trades);
+	}
+
+	private void solve() {
+		double[] available = new double[3];
+		double start;
+		if (theSolved == 0) {
+			System.arraycopy(theHoldings, 0, available, 0, 3);
+			start = 0;
+		} else {
+			Stage prev = theStages.get(theSolved - 1);
+			System.arraycopy(prev.after, 0, available, 0, 3);
+			start = prev.start;
+		}
+		double productionValue = value(theProduction[METAL], theProduction[CRYSTAL], theProduction[DEUTERIUM]);
+		for (int s = theSolved; s < theStages.size(); s++) {
+			Stage stage = theStages.get(s);
+			stage.trades.clear();
+			if (Double.isInfinite(start)) {
+				stage.start = start;
+				continue;
+			}
+			// The earliest time at which the value of the resources on hand covers the value of the cost
+			double needed = value(stage.cost[METAL], stage.cost[CRYSTAL], stage.cost[DEUTERIUM])
+				- value(available[METAL], available[CRYSTAL], available[DEUTERIUM]);
+			double wait;
+			if (needed <= 0) {
+				wait = 0;
+			} else if (productionValue <= 0) {
+				wait = Double.POSITIVE_INFINITY;
+			} else {
+				wait = needed / productionValue;
+			}
+			if (Double.isInfinite(wait)) {
+				start = stage.start = wait;
+				continue;
+			}
+			start += wait;
+			stage.start = start;
+			double[] balance = new double[3];
+			for (int r = 0; r < 3; r++) {
+				balance[r] = available[r] + theProduction[r] * wait - stage.cost[r];
+			}
+			trade(s, stage, balance);
+			System.arraycopy(balance, 0, stage.after, 0, 3);
+			System.arraycopy(balance, 0, available, 0, 3);
+		}
+		theSolved = theStages.size();
+	}
+
+	/** Makes the trades needed to bring every resource in the balance to zero or more, recording them in the stage */
+	private void trade(int index, Stage stage, double[] balance) {
+		int deficits = 0;
+		double deficitValue = 0;
+		for (int r = 0; r < 3; r++) {
+			if (balance[r] < 0) {
+				deficits++;
+				deficitValue -= balance[r] / theRatios[r];
+			}
+		}
+		if (deficits == 0) {
+			return;
+		}
+		// Pay with the surplus resource with the most value first, so a single trade covers the shortfall whenever possible
+		int first = -1, second = -1;
+		for (int r = 0; r < 3; r++) {
+			if (balance[r] > 0) {
+				if (first < 0 || balance[r] / theRatios[r] > balance[first] / theRatios[first]) {
+					second = first;
+					first = r;
+				} else {
+					second = r;
+				}
+			}
+		}
+		if (first < 0) {
+			return; // Shouldn't happen, since the start time is when the total value covers the cost
+		}
+		double firstValue = balance[first] / theRatios[first];
+		if (second < 0 || firstValue >= deficitValue) {
+			// Surplus of a single resource covers all deficits
+			makeTrade(index, stage, balance, first, 1);
+		} else {
+			// Two surpluses, one deficit, and neither surplus can cover it alone
+			makeTrade(index, stage, balance, first, firstValue / deficitValue);
+			makeTrade(index, stage, balance, second, 1);
+		}
+	}
+
+	/**
+	 * Trades the given resource for a portion of every current deficit
+	 *
+	 * @param portion The fraction of each deficit to cover
+	 */
+	private void makeTrade(int index, Stage stage, double[] balance, int give, double portion) {
+		long[] amounts = new long[3];
+		double given = 0;
+		for (int r = 0; r < 3; r++) {
+			if (r != give && balance[r] < 0) {
+				amounts[r] = (long) Math.ceil(-balance[r] * portion);
+				given += amounts[r] / theRatios[r];
+			}
+		}
+		// Same rounding as Trade.getRequiredResource
+		amounts[give] = -Math.round(given * theRatios[give]);
+		for (int r = 0; r < 3; r++) {
+			balance[r] += amounts[r];
+		}
+		stage.trades.add(new PlannedTrade(index, toDuration(stage.start), RESOURCES[give], amounts[METAL], amounts[CRYSTAL],
+			amounts[DEUTERIUM]));
+	}
+
+	private double value(double metal, double crystal, double deuterium) {
+		return metal / theRatios[METAL] + crystal / theRatios[CRYSTAL] + deuterium / theRatios[DEUTERIUM];
+	}
+
+	private static boolean setCost(Stage stage, UpgradeCost cost) {
+		long metal = cost == null ? 0 : cost.getMetal();
+		long crystal = cost == null ? 0 : cost.getCrystal();
+		long deuterium = cost == null ? 0 : cost.getDeuterium();
+		if (stage.cost[METAL] == metal && stage.cost[CRYSTAL] == crystal && stage.cost[DEUTERIUM] == deuterium) {
+			return false;
+		}
+		stage.cost[METAL] = metal;
+		stage.cost[CRYSTAL] = crystal;
+		stage.cost[DEUTERIUM] = deuterium;
+		return true;
+	}
+
+	private static boolean set(double[] values, double metal, double crystal, double deuterium) {
+		if (values[METAL] == metal && values[CRYSTAL] == crystal && values[DEUTERIUM] == deuterium) {
+			return false;
+		}
+		values[METAL] = metal;
+		values[CRYSTAL] = crystal;
+		values[DEUTERIUM] = deuterium;
+		return true;
+	}
+
+	private static Duration toDuration(double hours) {
+		return Duration.ofSeconds((long) Math.ceil(hours * 3600));
+	}
+}
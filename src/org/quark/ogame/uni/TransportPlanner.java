@@ -0,0 +1,277 @@
+package org.quark.ogame.uni;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * <p>
+ * Plans the consolidation of resources from many planets to a single destination, e.g. a build site, by a deadline.
+ * </p>
+ * <p>
+ * Each source ships everything it has at departure, including what it produces until it leaves, with a single ship type. For each source,
+ * every combination of carrier type and speed setting (10-100%) is evaluated. The departure for each combination is the latest one that
+ * still arrives by the deadline, so the most production is collected. The chosen combination is the one that burns the least deuterium,
+ * preferring the one that delivers the most when fuel costs are equal. Fuel is paid from the deuterium the source sends and takes up cargo
+ * space.
+ * </p>
+ * <p>
+ * Candidates are evaluated in parallel, which is safe because {@link FleetProfile}s and fleet rules are thread-safe. The planner itself is
+ * immutable.
+ * </p>
+ */
+public class TransportPlanner {
+	/** The carriers used by default: the ships built for transport */
+	public static final List<ShipyardItemType> DEFAULT_CARRIERS = Collections.unmodifiableList(Arrays.asList(//
+		ShipyardItemType.SmallCargo, ShipyardItemType.LargeCargo, ShipyardItemType.PathFinder));
+	/** The speed settings that may be chosen for a flight */
+	public static final int MIN_SPEED_PERCENT = 10;
+	public static final int MAX_SPEED_PERCENT = 100;
+	private static final int SPEED_STEPS = MAX_SPEED_PERCENT / MIN_SPEED_PERCENT;
+
+	/** A planet or moon to gather resources from */
+	public static class Source {
+		public final Object owner;
+		public final int galaxy;
+		public final int system;
+		public final int slot;
+		final long metal;
+		final long crystal;
+		final long deuterium;
+		final double metalPerHour;
+		final double crystalPerHour;
+		final double deuteriumPerHour;
+		/** The number of each ship available at the source, by ship ordinal, or null if ships are not limited */
+		final int[] ships;
+
+		/**
+		 * @param owner The planet or moon, or any other object identifying the source
+		 * @param coords The coordinates of the source
+		 * @param metal The metal currently at the source
+		 * @param crystal The crystal currently at the source
+		 * @param deuterium The deuterium currently at the source
+		 * @param metalPerHour The net metal production of the source
+		 * @param crystalPerHour The net crystal production of the source
+		 * @param deuteriumPerHour The net deuterium production of the source
+		 * @param ships The ships stationed at the source, or null to plan as if any number were available
+		 */
+		public Source(Object owner, Coordinate coords, long metal, long crystal, long deuterium, double metalPerHour, double crystalPerHour,
+			double deuteriumPerHour, RockyBody ships) {
+			this.owner = owner;
+			galaxy = coords.getGalaxy();
+			system = coords.getSystem();
+			slot = coords.getSlot();
+			this.metal = metal;
+			this.crystal = crystal;
+			this.deuterium = deuterium;
+			this.metalPerHour = metalPerHour;
+			this.crystalPerHour = crystalPerHour;
+			this.deuteriumPerHour = deuteriumPerHour;
+			if (ships == null) {
+				this.ships = null;
+			} else {
+				this.ships = new int[ShipyardItemType.values().length];
+				for (ShipyardItemType type : ShipyardItemType.values()) {
+					this.ships[type.ordinal()] = ships.getStationedShips(type);
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return owner + " [" + galaxy + ":" + system + ":" + slot + "]";
+		}
+	}
+
+	/** A planned flight from one source to the destination */
+	public static class Transport {
+		public final Source source;
+		public final ShipyardItemType ship;
+		public final int count;
+		public final int speedPercent;
+		/** The time from now at which the fleet should leave */
+		public final Duration departure;
+		public final Duration flightTime;
+		/** The resources that will arrive, after fuel */
+		public final long metal;
+		public final long crystal;
+		public final long deuterium;
+		public final long fuel;
+
+		Transport(Source source, ShipyardItemType ship, int count, int speedPercent, Duration departure, Duration flightTime, long metal,
+			long crystal, long deuterium, long fuel) {
+			this.source = source;
+			this.ship = ship;
+			this.count = count;
+			this.speedPercent = speedPercent;
+			this.departure = departure;
+			this.flightTime = flightTime;
+			this.metal = metal;
+			this.crystal = crystal;
+			this.deuterium = deuterium;
+			this.fuel = fuel;
+		}
+
+		@Override
+		public String toString() {
+			return source + ": " + count + " " + ship + " @" + speedPercent + "% in " + departure + " (" + fuel + " fuel)";
+		}
+	}
+
+	/** The result of a plan */
+	public static class Plan {
+		public final List<Transport> transports;
+		/** The sources that had resources but could not deliver them by the deadline with the available ships and fuel */
+		public final List<Source> unreachable;
+		public final long totalFuel;
+		public final long totalMetal;
+		public final long totalCrystal;
+		public final long totalDeuterium;
+
+		Plan(List<Transport> transports, List<Source> unreachable) {
+			this.transports = Collections.unmodifiableList(transports);
+			this.unreachable = Collections.unmodifiableList(unreachable);
+			long fuel = 0, metal = 0, crystal = 0, deuterium = 0;
+			for (Transport t : transports) {
+				fuel += t.fuel;
+				metal += t.metal;
+				crystal += t.crystal;
+				deuterium += t.deuterium;
+			}
+			totalFuel = fuel;
+			totalMetal = metal;
+			totalCrystal = crystal;
+			totalDeuterium = deuterium;
+		}
+	}
+
+	private final FleetProfile theProfile;
+	private final ShipyardItemType[] theCarriers;
+
+	/**
+	 * @param profile The fleet characteristics of the account
+	 * @param carriers The ship types that may be used to carry resources
+	 */
+	public TransportPlanner(FleetProfile profile, List<ShipyardItemType> carriers) {
+		theProfile = profile;
+		theCarriers = carriers.stream().filter(type -> type.mobile && profile.getCargoSpace(type) > 0).toArray(ShipyardItemType[]::new);
+	}
+
+	/** @param profile The fleet characteristics of the account */
+	public TransportPlanner(FleetProfile profile) {
+		this(profile, DEFAULT_CARRIERS);
+	}
+
+	/**
+	 * @param sources The planets and moons to gather resources from
+	 * @param distances The distance matrix to get flight distances from
+	 * @param destination The coordinates to gather the resources at
+	 * @param deadline The time from now by which all resources must arrive
+	 * @return The cheapest transport from each source that can deliver by the deadline
+	 */
+	public Plan plan(List<Source> sources, DistanceMatrix distances, Coordinate destination, Duration deadline) {
+		int sourceCount = sources.size();
+		int perSource = theCarriers.length * SPEED_STEPS;
+		// Look up everything that is not thread-safe or needs objects up front, so the parallel evaluation only touches arrays
+		int[] sourceDistances = new int[sourceCount];
+		for (int s = 0; s < sourceCount; s++) {
+			Source source = sources.get(s);
+			sourceDistances[s] = distances.getDistance(source.galaxy, source.system, source.slot, //
+				destination.getGalaxy(), destination.getSystem(), destination.getSlot());
+		}
+		long deadlineSeconds = deadline.getSeconds();
+		long[] fuel = new long[sourceCount * perSource];
+		long[] delivered = new long[fuel.length];
+		int[] shipCounts = new int[fuel.length];
+		long[] flightSeconds = new long[fuel.length];
+		IntStream.range(0, fuel.length).parallel().forEach(c -> {
+			int s = c / perSource;
+			ShipyardItemType carrier = theCarriers[(c % perSource) / SPEED_STEPS];
+			int speedPercent = ((c % SPEED_STEPS) + 1) * MIN_SPEED_PERCENT;
+			evaluate(sources.get(s), carrier, speedPercent, sourceDistances[s], deadlineSeconds, c, fuel, delivered, shipCounts,
+				flightSeconds);
+		});
+
+		List<Transport> transports = new ArrayList<>(sourceCount);
+		List<Source> unreachable = new ArrayList<>();
+		for (int s = 0; s < sourceCount; s++) {
+			Source source = sources.get(s);
+			if (source.galaxy == destination.getGalaxy() && source.system == destination.getSystem()
+				&& source.slot == destination.getSlot()) {
+				continue; // Already there
+			}
+			int best = -1;
+			boolean empty = true;
+			for (int c = s * perSource; c < (s + 1) * perSource; c++) {
+				if (shipCounts[c] == 0) {
+					continue; // Nothing to ship
+				}
+				empty = false;
+				if (shipCounts[c] < 0) {
+					continue; // Infeasible
+				}
+				if (best < 0 || fuel[c] < fuel[best] || (fuel[c] == fuel[best] && delivered[c] > delivered[best])) {
+					best = c;
+				}
+			}
+			if (best >= 0) {
+				transports.add(createTransport(source, best, perSource, deadlineSeconds, shipCounts[best], fuel[best], flightSeconds[best]));
+			} else if (!empty) {
+				unreachable.add(source);
+			}
+		}
+		return new Plan(transports, unreachable);
+	}
+
+	/**
+	 * Evaluates one combination of source, carrier and speed, storing the result in the candidate's slot of each array. A ship count of
+	 * zero means there was nothing to ship; a negative count means the combination is infeasible.
+	 */
+	private void evaluate(Source source, ShipyardItemType carrier, int speedPercent, int distance, long deadlineSeconds, int c,
+		long[] fuel, long[] delivered, int[] shipCounts, long[] flightSeconds) {
+		Duration flightTime = theProfile.getRules().getFlightTime(theProfile.getSpeed(carrier, false, false), distance, speedPercent);
+		long flight = flightTime.getSeconds();
+		flightSeconds[c] = flight;
+		if (flight > deadlineSeconds) {
+			shipCounts[c] = -1;
+			return;
+		}
+		double hours = (deadlineSeconds - flight) / 3600.0;
+		long metal = source.metal + Math.max(0, (long) (source.metalPerHour * hours));
+		long crystal = source.crystal + Math.max(0, (long) (source.crystalPerHour * hours));
+		long deuterium = source.deuterium + Math.max(0, (long) (source.deuteriumPerHour * hours));
+		long load = metal + crystal + deuterium;
+		if (load <= 0) {
+			shipCounts[c] = 0;
+			return;
+		}
+		int cargo = theProfile.getCargoSpace(carrier);
+		long ships = (load + cargo - 1) / cargo;
+		if (ships > Integer.MAX_VALUE || (source.ships != null && ships > source.ships[carrier.ordinal()])) {
+			shipCounts[c] = -1;
+			return;
+		}
+		long flightFuel = (long) Math.ceil(ships * theProfile.getFuelConsumption(carrier, distance, flightTime));
+		if (flightFuel > deuterium) {
+			shipCounts[c] = -1; // Can't pay for the flight
+			return;
+		}
+		shipCounts[c] = (int) ships;
+		fuel[c] = flightFuel;
+		delivered[c] = load - flightFuel;
+	}
+
+	private Transport createTransport(Source source, int c, int perSource, long deadlineSeconds, int ships, long fuel, long flight) {
+		ShipyardItemType carrier = theCarriers[(c % perSource) / SPEED_STEPS];
+		int speedPercent = ((c % SPEED_STEPS) + 1) * MIN_SPEED_PERCENT;
+		double hours = (deadlineSeconds - flight) / 3600.0;
+		long metal = source.metal + Math.max(0, (long) (source.metalPerHour * hours));
+		long crystal = source.crystal + Math.max(0, (long) (source.crystalPerHour * hours));
+		long deuterium = source.deuterium + Math.max(0, (long) (source.deuteriumPerHour * hours));
+		return new Transport(source, carrier, ships, speedPercent, Duration.ofSeconds(deadlineSeconds - flight), Duration.ofSeconds(flight),
+			metal, crystal, deuterium - fuel, fuel);
+	}
+}
@@ -19,6 +19,7 @@ import org.qommons.io.Format;
 import org.qommons.io.SpinnerFormat;
 import org.quark.ogame.OGameUtils;
 import org.quark.ogame.uni.Account;
+import org.quark.ogame.uni.FleetProfile;
 import org.quark.ogame.uni.FleetRules;
 import org.quark.ogame.uni.PlannedFlight;
 import org.quark.ogame.uni.ShipyardItemType;
@@ -42,6 +43,8 @@ public class FlightPanel {
 	private final ObservableValue<Integer> theDistance;
 	private final ObservableValue<Duration> theFlightTime;
 	private final ObservableValue<Long> theFuelConsumption;
+	/** The fleet characteristics of the selected account, recompiled only when they may have changed */
+	private FleetProfile theFleetProfile;
 
 	public FlightPanel(OGameUniGui uniGui) {
 		theUniGui = uniGui;
@@ -165,40 +168,48 @@ public class FlightPanel {
 	}
 
 	int getFlightDistance(PlannedFlight flight) {
-		int distance = theUniGui.getRules().get().fleet().getDistance(theUniGui.getSelectedAccount().get().getUniverse(), //
+		int distance = theUniGui.getDistances().getDistance(//
 			flight.getSourceGalaxy(), flight.getSourceSystem(), flight.getSourceSlot(), //
 			flight.getDestGalaxy(), flight.getDestSystem(), flight.getDestSlot());
 		return distance;
 	}
 
-	Duration getFlightTime(PlannedFlight flight) {
-		int distance = getFlightDistance(flight);
+	FleetProfile getFleetProfile() {
 		Account account = theUniGui.getSelectedAccount().get();
 		FleetRules fleet = theUniGui.getRules().get().fleet();
-		Duration maxFlightTime = Duration.ZERO;
+		FleetProfile profile = theFleetProfile;
+		if (profile == null || !profile.isCurrent(fleet, account)) {
+			profile = theFleetProfile = fleet.compileProfile(account);
+		}
+		return profile;
+	}
+
+	Duration getFlightTime(PlannedFlight flight) {
+		int distance = getFlightDistance(flight);
+		FleetProfile profile = getFleetProfile();
+		int minSpeed = Integer.MAX_VALUE;
 		for (ShipyardItemType type : ShipyardItemType.values()) {
 			if (!type.mobile || flight.getFleet().getItems(type) == 0) {
 				continue;
 			}
-			Duration shipFlightTime = fleet.getFlightTime(//
-				fleet.getSpeed(type, account, flight.getDestSlot() == 16, flight.isDestAllianceMember()), distance, flight.getSpeed());
-			if (shipFlightTime.compareTo(maxFlightTime) > 0) {
-				maxFlightTime = shipFlightTime;
-			}
+			minSpeed = Math.min(minSpeed, profile.getSpeed(type, flight.getDestSlot() == 16, flight.isDestAllianceMember()));
+		}
+		if (minSpeed == Integer.MAX_VALUE) {
+			return Duration.ZERO;
 		}
-		return maxFlightTime;
+		// The flight time only gets longer as the speed decreases, so the slowest ship determines it
+		return profile.getRules().getFlightTime(minSpeed, distance, flight.getSpeed());
 	}
 
 	long getFuelConsumption(PlannedFlight flight) {
 		int distance = getFlightDistance(flight);
 		Duration flightTime = getFlightTime(flight);
-		Account account = theUniGui.getSelectedAccount().get();
-		FleetRules fleet = theUniGui.getRules().get().fleet();
+		FleetProfile profile = getFleetProfile();
 		double fuel = 0;
 		for (ShipyardItemType type : ShipyardItemType.values()) {
 			int amount = type.mobile ? flight.getFleet().getItems(type) : 0;
 			if (amount > 0) {
-				double rate = fleet.getFuelConsumption(type, account, distance, flightTime);
+				double rate = profile.getFuelConsumption(type, distance, flightTime);
 				fuel += rate * amount;
 			}
 		}
@@ -206,12 +217,11 @@ public class FlightPanel {
 	}
 
 	double getSpeed(ShipyardItemType type, PlannedFlight flight) {
-		return theUniGui.getRules().get().fleet().getSpeed(type, theUniGui.getSelectedAccount().get(), flight.getDestSlot() == 16,
-			flight.isDestAllianceMember());
+		return getFleetProfile().getSpeed(type, flight.getDestSlot() == 16, flight.isDestAllianceMember());
 	}
 
 	double getCargo(ShipyardItemType type, int count) {
-		return theUniGui.getRules().get().fleet().getCargoSpace(type, theUniGui.getSelectedAccount().get()) * 1.0 * count;
+		return getFleetProfile().getCargoSpace(type) * 1.0 * count;
 	}
 
 	static final Format<Double> INT_FORMAT = Format.doubleFormat("#,##0");
@@ -2,6 +2,8 @@ package org.quark.ogame.uni.ui;
 
 import java.awt.Color;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.observe.Observable;
 import org.observe.collect.ObservableCollection;
@@ -15,11 +17,14 @@ import org.qommons.collect.ElementId;
 import org.qommons.io.Format;
 import org.qommons.io.SpinnerFormat;
 import org.quark.ogame.OGameUtils;
+import org.quark.ogame.uni.Account;
 import org.quark.ogame.uni.AccountUpgradeType;
 import org.quark.ogame.uni.Holding;
 import org.quark.ogame.uni.ResourceType;
 import org.quark.ogame.uni.ShipyardItemType;
 import org.quark.ogame.uni.Trade;
+import org.quark.ogame.uni.TradePlanner;
+import org.quark.ogame.uni.TradePlanner.PlannedTrade;
 import org.quark.ogame.uni.TradeRatios;
 import org.quark.ogame.uni.UpgradeCost;
 import org.quark.ogame.uni.UpgradeType;
@@ -30,11 +35,16 @@ public class HoldingsPanel {
 	private final OGameUniGui theUniGui;
 
 	private final ObservableCollection<Holding> theHoldings;
+	private final ResourceTotals<Holding> theHoldingTotals;
 	private final Holding theTotalHolding;
 	private final Holding theProductionTimeHolding;
 	private final Holding theUpgradeTimeHolding;
 
 	private final ObservableCollection<Trade> theTrades;
+	private final ResourceTotals<Trade> theTradeTotals;
+	private final TradePlanner theTradePlanner;
+	/** The trades created by {@link #planTrades()} that are replaced by the next planning */
+	private final List<Trade> thePlannedTrades;
 	private final Trade theTotalTrade;
 	private final Trade theUpgradeTimeTrade;
 	private final SyntheticTrade theTradesNeeded;
@@ -45,6 +55,7 @@ public class HoldingsPanel {
 
 		ObservableCollection<Holding> flatHoldings = ObservableCollection.flattenValue(theUniGui.getSelectedAccount().map(
 			new TypeToken<ObservableCollection<Holding>>() {}, acct -> acct.getHoldings().getValues(), opts -> opts.nullToNull(true)));
+		theHoldingTotals = new ResourceTotals<>(flatHoldings, Holding::getMetal, Holding::getCrystal, Holding::getDeuterium);
 		theTotalHolding = new SyntheticHolding() {
 			@Override
 			public String getName() {
@@ -58,35 +69,17 @@ public class HoldingsPanel {
 
 			@Override
 			public long getMetal() {
-				long amount = 0;
-				try (Transaction t = flatHoldings.lock(false, null)) {
-					for (Holding h : flatHoldings) {
-						amount += h.getMetal();
-					}
-				}
-				return amount;
+				return theHoldingTotals.getMetal();
 			}
 
 			@Override
 			public long getCrystal() {
-				long amount = 0;
-				try (Transaction t = flatHoldings.lock(false, null)) {
-					for (Holding h : flatHoldings) {
-						amount += h.getCrystal();
-					}
-				}
-				return amount;
+				return theHoldingTotals.getCrystal();
 			}
 
 			@Override
 			public long getDeuterium() {
-				long amount = 0;
-				try (Transaction t = flatHoldings.lock(false, null)) {
-					for (Holding h : flatHoldings) {
-						amount += h.getDeuterium();
-					}
-				}
-				return amount;
+				return theHoldingTotals.getDeuterium();
 			}
 		};
 		theProductionTimeHolding = new SyntheticHolding() {
@@ -202,7 +195,8 @@ public class HoldingsPanel {
 		ElementId totalId = synthHoldings.getElement(0).getElementId();
 		ElementId productionId = synthHoldings.getElement(1).getElementId();
 		ElementId upgradeTimeId = synthHoldings.getElement(2).getElementId();
-		flatHoldings.simpleChanges().act(__ -> {
+		// Only refresh the synthetic rows when the totals actually change, not for every edit to a holding's name or type
+		theHoldingTotals.changes().act(__ -> {
 			synthHoldings.mutableElement(totalId).set(theTotalHolding);
 			synthHoldings.mutableElement(productionId).set(theProductionTimeHolding);
 			synthHoldings.mutableElement(upgradeTimeId).set(theUpgradeTimeHolding);
@@ -215,6 +209,7 @@ public class HoldingsPanel {
 
 		ObservableCollection<Trade> flatTrades = ObservableCollection.flattenValue(theUniGui.getSelectedAccount()
 			.map(new TypeToken<ObservableCollection<Trade>>() {}, acct -> acct.getTrades().getValues(), opts -> opts.nullToNull(true)));
+		theTradeTotals = new ResourceTotals<>(flatTrades, Trade::getMetal, Trade::getCrystal, Trade::getDeuterium);
 		theTotalTrade = new SyntheticTrade() {
 			@Override
 			public String getName() {
@@ -223,35 +218,17 @@ public class HoldingsPanel {
 
 			@Override
 			public long getMetal() {
-				long amount = 0;
-				try (Transaction t = flatTrades.lock(false, null)) {
-					for (Trade h : flatTrades) {
-						amount += h.getMetal();
-					}
-				}
-				return amount;
+				return theTradeTotals.getMetal();
 			}
 
 			@Override
 			public long getCrystal() {
-				long amount = 0;
-				try (Transaction t = flatTrades.lock(false, null)) {
-					for (Trade h : flatTrades) {
-						amount += h.getCrystal();
-					}
-				}
-				return amount;
+				return theTradeTotals.getCrystal();
 			}
 
 			@Override
 			public long getDeuterium() {
-				long amount = 0;
-				try (Transaction t = flatTrades.lock(false, null)) {
-					for (Trade h : flatTrades) {
-						amount += h.getDeuterium();
-					}
-				}
-				return amount;
+				return theTradeTotals.getDeuterium();
 			}
 		};
 		theUpgradeTimeTrade = new SyntheticTrade() {
@@ -431,7 +408,7 @@ public class HoldingsPanel {
 		ElementId upgradeTimeTradeId = synthTrades.getElement(1).getElementId();
 		ElementId tradesNeededId = synthTrades.getElement(2).getElementId();
 		ElementId totalTradesUpgradeId = synthTrades.getElement(3).getElementId();
-		Observable.or(flatTrades.simpleChanges(), flatHoldings.simpleChanges()).act(__ -> {
+		Observable.or(theTradeTotals.changes(), theHoldingTotals.changes()).act(__ -> {
 			synthTrades.mutableElement(totalTradeId).set(theTotalTrade);
 			synthTrades.mutableElement(upgradeTimeTradeId).set(theUpgradeTimeTrade);
 			synthTrades.mutableElement(tradesNeededId).set(theTradesNeeded);
@@ -443,6 +420,23 @@ public class HoldingsPanel {
 			synthTrades.mutableElement(totalTradesUpgradeId).set(theTotalTradesUpgradeTime);
 		});
 		theTrades = ObservableCollection.flattenCollections(TypeTokens.get().of(Trade.class), flatTrades, synthTrades).collect();
+
+		// Keep the trade planner in step with the upgrade queue so that re-planning only re-solves from the first changed upgrade
+		theTradePlanner = new TradePlanner();
+		thePlannedTrades = new ArrayList<>();
+		theUniGui.getUpgrades().subscribe(evt -> {
+			switch (evt.getType()) {
+			case add:
+				theTradePlanner.add(evt.getIndex(), evt.getNewValue().getCost());
+				break;
+			case remove:
+				theTradePlanner.remove(evt.getIndex());
+				break;
+			case set:
+				theTradePlanner.set(evt.getIndex(), evt.getNewValue().getCost());
+				break;
+			}
+		}, true);
 	}
 
 	public void addPanel(PanelPopulator<?, ?> panel) {
@@ -764,10 +758,48 @@ public class HoldingsPanel {
 							remAction -> remAction.modifyButton(addBtn -> addBtn
 								.disableWith(theUniGui.getSelectedAccount().map(acct -> acct == null ? "No Account Selected" : null))))//
 			)//
+					.addButton("Plan Trades", __ -> planTrades(), btn -> btn
+						.withTooltip("Adds the merchant trades needed to start each planned upgrade as early as possible")
+						.disableWith(theUniGui.getSelectedAccount().map(acct -> acct == null ? "No Account Selected" : null)))//
 			)//
 		);
 	}
 
+	/**
+	 * Adds the merchant trades needed to start each planned upgrade as early as possible to the selected account, replacing any trades
+	 * from the last planning that are still in the account
+	 */
+	void planTrades() {
+		Account account = theUniGui.getSelectedAccount().get();
+		TradeRatios ratios = account.getUniverse().getTradeRatios();
+		try (Transaction t = account.getTrades().getValues().lock(true, null)) {
+			// Trades entered by the user count as done. Trades from the last planning may be for later, so they are re-planned instead.
+			thePlannedTrades.retainAll(account.getTrades().getValues());
+			long metal = theHoldingTotals.getMetal() + theTradeTotals.getMetal();
+			long crystal = theHoldingTotals.getCrystal() + theTradeTotals.getCrystal();
+			long deuterium = theHoldingTotals.getDeuterium() + theTradeTotals.getDeuterium();
+			for (Trade trade : thePlannedTrades) {
+				metal -= trade.getMetal();
+				crystal -= trade.getCrystal();
+				deuterium -= trade.getDeuterium();
+			}
+			account.getTrades().getValues().removeAll(thePlannedTrades);
+			thePlannedTrades.clear();
+
+			theTradePlanner.setRatios(ratios)//
+				.setProduction(theUniGui.getTotalMetalProduction(), theUniGui.getTotalCrystalProduction(),
+					theUniGui.getTotalDeuteriumProduction())//
+				.setHoldings(metal, crystal, deuterium);
+			for (PlannedTrade trade : theTradePlanner.getTrades()) {
+				String name = theUniGui.getUpgrades().get(trade.upgrade) + " in " + OGameUniGui.printUpgradeTime(trade.time);
+				thePlannedTrades.add(account.getTrades().create()//
+					.with(Trade::getName, name).with(Trade::getType, trade.type)//
+					.with(Trade::getResource1, trade.getResource1()).with(Trade::getResource2, trade.getResource2())//
+					.create(tr -> tr.getRate().set(ratios)).get());
+			}
+		}
+	}
+
 	private static abstract class SyntheticHolding implements Holding {
 		@Override
 		public Nameable setName(String name) {
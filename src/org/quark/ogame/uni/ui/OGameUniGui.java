@@ -3,15 +3,11 @@ package org.quark.ogame.uni.ui;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.EventQueue;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.Charset;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.function.BiConsumer;
@@ -49,6 +45,7 @@ import org.observe.util.swing.PanelPopulation;
 import org.qommons.LambdaUtils;
 import org.qommons.QommonsUtils;
 import org.qommons.StringUtils;
+import org.qommons.Transaction;
 import org.qommons.ValueHolder;
 import org.qommons.collect.CollectionElement;
 import org.qommons.io.Format;
@@ -59,9 +56,12 @@ import org.quark.ogame.uni.AccountClass;
 import org.quark.ogame.uni.AccountUpgradeType;
 import org.quark.ogame.uni.AllianceClass;
 import org.quark.ogame.uni.BuildingType;
+import org.quark.ogame.uni.DistanceMatrix;
+import org.quark.ogame.uni.FleetRules;
 import org.quark.ogame.uni.OGameEconomyRuleSet;
 import org.quark.ogame.uni.OGameEconomyRuleSet.Production;
 import org.quark.ogame.uni.OGamePageReader;
+import org.quark.ogame.uni.OGamePageReader.PageImport;
 import org.quark.ogame.uni.OGameRuleSet;
 import org.quark.ogame.uni.Planet;
 import org.quark.ogame.uni.PlannedUpgrade;
@@ -75,10 +75,7 @@ import org.quark.ogame.uni.UpgradeAccount;
 import org.quark.ogame.uni.UpgradeAccount.UpgradePlanet;
 import org.quark.ogame.uni.UpgradeAccount.UpgradeRockyBody;
 import org.quark.ogame.uni.UpgradeCost;
-import org.quark.ogame.uni.versions.OGameRuleSet710;
-import org.quark.ogame.uni.versions.OGameRuleSet711;
-import org.quark.ogame.uni.versions.OGameRuleSet750;
-import org.quark.ogame.uni.versions.OGameRuleSet800pl7;
+import org.quark.ogame.uni.versions.OGameRuleSets;
 
 import com.google.common.reflect.TypeToken;
 
@@ -103,6 +100,13 @@ public class OGameUniGui extends JPanel {
 
 	private final SettableValue<File> thePlanetEmpireFile;
 	private final SettableValue<File> theMoonEmpireFile;
+	private final SettableValue<String> theImportFolder;
+	/** The record of pages imported from the watched folder, and the folder it is for */
+	private final SettableValue<String> theImportedPages;
+	private final SettableValue<String> theImportedPagesFolder;
+	private PageFolderWatcher theImportWatcher;
+	/** Created on first use, then maintained incrementally as planets change */
+	private DistanceMatrix theDistances;
 
 	private final PlanetTable thePlanetPanel;
 	private final ProductionPanel theProductionPanel;
@@ -184,6 +188,14 @@ public class OGameUniGui extends JPanel {
 		planets.changes().act(evt -> {
 			switch (evt.type) {
 			case add:
+				if (theDistances != null) {
+					for (PlanetWithProduction p : evt.getValues()) {
+						theDistances.put(p.planet, p.planet.getCoordinates());
+					}
+				}
+				if (isImporting) {
+					break; // Production is refreshed for all planets when the import is finished
+				}
 				for (PlanetWithProduction p : evt.getValues()) {
 					updateProduction(p);
 				}
@@ -191,6 +203,10 @@ public class OGameUniGui extends JPanel {
 			case remove:
 				Account current = selectedAccount.get();
 				for (PlanetWithProduction p : evt.getOldValues()) {
+					adjustTotalProduction(p, -1);
+					if (theDistances != null) {
+						theDistances.remove(p.planet);
+					}
 					if (p.planet.getAccount() == current) {
 						// Remove planet-specific upgrades to avoid orphaning them
 						for (CollectionElement<PlannedUpgrade> upgrade : current.getPlannedUpgrades().getValues().elements()) {
@@ -202,13 +218,22 @@ public class OGameUniGui extends JPanel {
 				}
 				break;
 			case set:
+				if (theDistances != null) {
+					for (PlanetWithProduction p : evt.getValues()) {
+						theDistances.put(p.planet, p.planet.getCoordinates()); // In case the planet was relocated
+					}
+				}
+				if (isImporting) {
+					break;
+				}
 				for (PlanetWithProduction p : evt.getValues()) {
 					updateProduction(p);
 				}
 			}
 			doPlanningLater();
 		});
-		upgrades.simpleChanges().act(__ -> doPlanningLater());
+		// Changes to the planned upgrades themselves only invalidate planning from the first changed upgrade onward
+		upgrades.simpleChanges().act(__ -> doUpgradePlanningLater());
 		// When the user changes the current research upgrade or building upgrade on a planet,
 		// That upgrade's cost should clear out, and the old upgrade (if any) should then show a cost
 		ObservableValue<ResearchType> currentResearch = ObservableValue.flatten(selectedAccount.map(a -> {
@@ -239,6 +264,10 @@ public class OGameUniGui extends JPanel {
 
 		thePlanetEmpireFile = SettableValue.build(File.class).safe(false).build();
 		theMoonEmpireFile = SettableValue.build(File.class).safe(false).build();
+		theImportFolder = config.observeValue("import-folder");
+		theImportedPages = config.observeValue("imported-pages");
+		theImportedPagesFolder = config.observeValue("imported-pages-folder");
+		theImportFolder.changes().act(evt -> watchImportFolder(evt.getNewValue()));
 
 		thePlanetPanel = new PlanetTable(this);
 		theProductionPanel = new ProductionPanel(this);
@@ -293,10 +322,14 @@ public class OGameUniGui extends JPanel {
 	}
 
 	public PlanetWithProduction createPlanet() {
-		CollectionElement<Planet> newPlanet = theSelectedAccount.get().getPlanets().create()//
+		CollectionElement<Planet> newPlanet = createPlanet(theSelectedAccount.get());
+		return thePlanets.getElementsBySource(newPlanet.getElementId(), theSelectedAccount.get().getPlanets().getValues()).getFirst().get();
+	}
+
+	static CollectionElement<Planet> createPlanet(Account account) {
+		return account.getPlanets().create()//
 			.with(Planet::getName,
-				StringUtils.getNewItemName(theSelectedAccount.get().getPlanets().getValues(), Planet::getName, "New Planet",
-					StringUtils.SIMPLE_DUPLICATES))
+				StringUtils.getNewItemName(account.getPlanets().getValues(), Planet::getName, "New Planet", StringUtils.SIMPLE_DUPLICATES))
 			.with(Planet::getBaseFields, 173)//
 			.with(Planet::getMetalUtilization, 100)//
 			.with(Planet::getCrystalUtilization, 100)//
@@ -306,7 +339,6 @@ public class OGameUniGui extends JPanel {
 			.with(Planet::getFusionReactorUtilization, 100)//
 			.with(Planet::getCrawlerUtilization, 100)//
 			.create();
-		return thePlanets.getElementsBySource(newPlanet.getElementId(), theSelectedAccount.get().getPlanets().getValues()).getFirst().get();
 	}
 
 	public PlanetTable getPlanetPanel() {
@@ -321,6 +353,24 @@ public class OGameUniGui extends JPanel {
 		return theHoldingsPanel;
 	}
 
+	/**
+	 * @return The flight distances between all the planets and moons of the selected account, kept up to date as planets are added,
+	 *         relocated and removed
+	 */
+	public DistanceMatrix getDistances() {
+		FleetRules fleet = theSelectedRuleSet.get().fleet();
+		Account account = theSelectedAccount.get();
+		if (theDistances == null || !theDistances.isFor(fleet, account.getUniverse())) {
+			theDistances = new DistanceMatrix(fleet, account.getUniverse());
+			for (PlanetWithProduction p : thePlanets) {
+				theDistances.put(p.planet, p.planet.getCoordinates());
+			}
+		} else {
+			theDistances.checkUniverse();
+		}
+		return theDistances;
+	}
+
 	PlanetWithProduction productionFor(Planet planet) {
 		return new PlanetWithProduction(((UpgradePlanet) planet).getWrapped(), (UpgradePlanet) planet)//
 			.setProduction(ZERO, ZERO, ZERO, ZERO).setUpgradeProduction(ZERO, ZERO, ZERO, ZERO);
@@ -334,61 +384,69 @@ public class OGameUniGui extends JPanel {
 		Production metal = eco.getProduction(account, p.planet, ResourceType.Metal, energyFactor);
 		Production crystal = eco.getProduction(account, p.planet, ResourceType.Crystal, energyFactor);
 		Production deuterium = eco.getProduction(account, p.planet, ResourceType.Deuterium, energyFactor);
+		adjustTotalProduction(p, -1);
 		p.setProduction(energy, metal, crystal, deuterium);
 		p.setUpgradeProduction(energy, metal, crystal, deuterium);
+		adjustTotalProduction(p, 1);
 
-		// At some point there may be a use case for adding each component of production,
-		// e.g. to see how much deuterium you're using on fusion throughout the empire.
-		// But at the moment, all that's needed is the total net production of material resources
-		// and the calculation for all that detail is cumbersome.
-		int totalMetal = 0, totalCrystal = 0, totalDeuterium = 0;
-		for (PlanetWithProduction planet : thePlanets) {
-			totalMetal += planet.getMetal().totalNet;
-			totalCrystal += planet.getCrystal().totalNet;
-			totalDeuterium += planet.getDeuterium().totalNet;
-		}
-		theTotalProduction.getFirst()
-			.setProduction(ZERO, //
-				new Production(Collections.emptyMap(), totalMetal, 0), //
-				new Production(Collections.emptyMap(), totalCrystal, 0), //
-				new Production(Collections.emptyMap(), totalDeuterium, 0))//
-			.setUpgradeProduction(ZERO, //
-				new Production(Collections.emptyMap(), totalMetal, 0), //
-				new Production(Collections.emptyMap(), totalCrystal, 0), //
-				new Production(Collections.emptyMap(), totalDeuterium, 0));
-		
 		doPlanningLater();
 	}
 
-	void updateTotalProduction(PlanetWithProduction total) {
-		// At some point there may be a use case for adding each component of production,
-		// e.g. to see how much deuterium you're using on fusion throughout the empire.
-		// But at the moment, all that's needed is the total net production of material resources
-		// and the calculation for all that detail is cumbersome.
-		int metal = 0, crystal = 0, deuterium = 0;
-		int upgradeMetal = 0, upgradeCrystal = 0, upgradeDeuterium = 0;
-		for (PlanetWithProduction planet : thePlanets) {
-			metal += planet.getMetal().totalNet;
-			crystal += planet.getCrystal().totalNet;
-			deuterium += planet.getDeuterium().totalNet;
-
-			upgradeMetal += planet.getUpgradeMetal().totalNet;
-			upgradeCrystal += planet.getUpgradeCrystal().totalNet;
-			upgradeDeuterium += planet.getUpgradeDeuterium().totalNet;
-		}
-		total
-			.setProduction(ZERO, //
-				new Production(Collections.emptyMap(), metal, 0), //
-				new Production(Collections.emptyMap(), crystal, 0), //
-				new Production(Collections.emptyMap(), deuterium, 0))//
-			.setUpgradeProduction(ZERO, //
-				new Production(Collections.emptyMap(), upgradeMetal, 0), //
-				new Production(Collections.emptyMap(), upgradeCrystal, 0), //
-				new Production(Collections.emptyMap(), upgradeDeuterium, 0));
-		theTotalProduction.mutableElement(theTotalProduction.getTerminalElement(true).getElementId()).set(total);
+	// At some point there may be a use case for adding each component of production,
+	// e.g. to see how much deuterium you're using on fusion throughout the empire.
+	// But at the moment, all that's needed is the total net production of material resources
+	// and the calculation for all that detail is cumbersome.
+	private int theTotalMetal;
+	private int theTotalCrystal;
+	private int theTotalDeuterium;
+	private boolean isTotalProductionDirty;
+
+	/**
+	 * Adds a planet's production into or removes it from the running empire totals. The total row is updated with the next planning.
+	 *
+	 * @param planet The planet whose production to add or remove
+	 * @param sign 1 to add the planet's production, -1 to remove it
+	 */
+	/** @return The current total net metal production of the selected account's planets */
+	int getTotalMetalProduction() {
+		return theTotalMetal;
 	}
-	
+
+	/** @return The current total net crystal production of the selected account's planets */
+	int getTotalCrystalProduction() {
+		return theTotalCrystal;
+	}
+
+	/** @return The current total net deuterium production of the selected account's planets */
+	int getTotalDeuteriumProduction() {
+		return theTotalDeuterium;
+	}
+
+	private void adjustTotalProduction(PlanetWithProduction planet, int sign) {
+		theTotalMetal += sign * planet.getMetal().totalNet;
+		theTotalCrystal += sign * planet.getCrystal().totalNet;
+		theTotalDeuterium += sign * planet.getDeuterium().totalNet;
+		isTotalProductionDirty = true;
+	}
+
+	private void updateTotalProduction() {
+		isTotalProductionDirty = false;
+		Production metal = new Production(Collections.emptyMap(), theTotalMetal, 0);
+		Production crystal = new Production(Collections.emptyMap(), theTotalCrystal, 0);
+		Production deuterium = new Production(Collections.emptyMap(), theTotalDeuterium, 0);
+		theTotalProduction.getFirst()//
+			.setProduction(ZERO, metal, crystal, deuterium)//
+			.setUpgradeProduction(ZERO, metal, crystal, deuterium);
+	}
+
+	/** Re-plans all upgrades soon, e.g. because the account or its planets have changed */
 	void doPlanningLater() {
+		isPlanningBaseDirty = true;
+		doUpgradePlanningLater();
+	}
+
+	/** Re-plans upgrades soon, starting from the first planned upgrade that has changed since the last planning */
+	void doUpgradePlanningLater() {
 		long now = System.currentTimeMillis();
 		isPlanningDirty = now;
 		EventQueue.invokeLater(() -> {
@@ -399,18 +457,31 @@ public class OGameUniGui extends JPanel {
 	}
 
 	private long isPlanningDirty;
+	private boolean isPlanningBaseDirty = true;
+	private final UpgradePlanner theUpgradePlanner = new UpgradePlanner(this::publishPlanning);
 
 	private void recalcPlanning() {
 		isPlanningDirty = 0;
-		UpgradeAccount ua=theUpgradeAccount.get();
-		if(ua==null) {
+		if (isTotalProductionDirty) {
+			// Only update the total once for a batch of planet changes
+			updateTotalProduction();
+			PlanetWithProduction total = theTotalProduction.getFirst();
+			theTotalProduction.mutableElement(theTotalProduction.getTerminalElement(true).getElementId()).set(total);
+		}
+		Account account = theSelectedAccount.get();
+		if (account == null || theUpgradeAccount.get() == null) {
 			return;
 		}
-		ua.clearUpgrades();
-		PlanetWithProduction total=theTotalProduction.getFirst();
-		OGameRuleSet rules=theSelectedRuleSet.get();
-		for(PlannedAccountUpgrade upgrade : theUpgrades){
-			plan(rules, ua, upgrade, thePlanets, total);
+		// Snapshot the planning inputs here; the costs and ROIs are computed off the event thread
+		theUpgradePlanner.submit(new UpgradePlanner.Request(account, theSelectedRuleSet.get(), new ArrayList<>(theUpgrades),
+			new ArrayList<>(thePlanets), theTotalProduction.getFirst(), isPlanningBaseDirty));
+		isPlanningBaseDirty = false;
+	}
+
+	private void publishPlanning(UpgradePlanner.Result result) {
+		PlanetWithProduction total = theTotalProduction.getFirst();
+		if (!result.apply(theUpgradeAccount.get(), thePlanets, total)) {
+			return; // Stale--the account has changed and a new planning will be along
 		}
 		theTotalProduction.mutableElement(theTotalProduction.getTerminalElement(true).getElementId()).set(total);
 		theUpgradeRefresh.onNext(null);
@@ -661,6 +732,14 @@ public class OGameUniGui extends JPanel {
 											.addButton("Import", this::importEmpireView, pv -> pv.disableWith(thePlanetEmpireFile
 												.map(f -> f == null ? "Download and select the planet empire view file" : null)))//
 										)//
+										.addHPanel("Auto-Import Folder:", "box", folderPanel -> folderPanel//
+											.addButton("Watch Folder", this::browseImportFolder, btn -> btn
+												.withText(theImportFolder.map(f -> f == null || f.isEmpty() ? "Watch Folder" : new File(f).getName()))
+												.withTooltip("<html>Saved Empire View and Overview pages in this folder are imported automatically<br>"//
+													+ "into the account for the page's universe. Moon Empire Views must have \"moon\" in the file name.</html>"))//
+											.addButton("Stop", __ -> theImportFolder.set(null, null), btn -> btn.disableWith(
+												theImportFolder.map(f -> f == null || f.isEmpty() ? "No folder is being watched" : null)))//
+										)//
 										.addHPanel("Import Overview:", "box",
 											empirePanel -> empirePanel//
 												.addButton("Import", this::importOverview,
@@ -991,10 +1070,9 @@ public class OGameUniGui extends JPanel {
 	}
 
 	private void importEmpireView(Object cause) {
-		int planets;
-		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(thePlanetEmpireFile.get())))) {
-			planets = OGamePageReader.readEmpireView(theSelectedAccount.get(), reader, theSelectedRuleSet.get(),
-				() -> createPlanet().planet);
+		PageImport imported = new PageImport();
+		try {
+			OGamePageReader.parseEmpireView(imported, thePlanetEmpireFile.get().toPath());
 		} catch (IOException | RuntimeException e) {
 			e.printStackTrace();
 			JOptionPane.showMessageDialog(this, "Empire view parsing failed", "Unable to Import Empire View", JOptionPane.ERROR_MESSAGE);
@@ -1002,15 +1080,15 @@ public class OGameUniGui extends JPanel {
 		}
 
 		if (theMoonEmpireFile.get() != null) {
-			try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(theMoonEmpireFile.get())))) {
-				OGamePageReader.readEmpireMoonView(theSelectedAccount.get(), theSelectedRuleSet.get(), reader);
+			try {
+				OGamePageReader.parseEmpireMoonView(imported, theMoonEmpireFile.get().toPath());
 			} catch (IOException | RuntimeException e) {
 				e.printStackTrace();
 				JOptionPane.showMessageDialog(this, "Moon empire view parsing failed", "Unable to Import Moon Empire View",
 					JOptionPane.ERROR_MESSAGE);
 			}
 		}
-		theSelectedAccount.set(theSelectedAccount.get(), null);
+		int planets = applyImport(imported, cause);
 		JOptionPane.showMessageDialog(this, "Successfully imported " + planets + " planets from Empire View", "Empire View Imported",
 			JOptionPane.INFORMATION_MESSAGE);
 	}
@@ -1022,24 +1100,122 @@ public class OGameUniGui extends JPanel {
 		if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
 			return;
 		}
-		int planets;
-		try (BufferedReader reader = new BufferedReader(
-			new InputStreamReader(new FileInputStream(chooser.getSelectedFile()), Charset.forName("UTF-8")))) {
-			planets = OGamePageReader.readOverview(theSelectedAccount.get(), reader, theSelectedRuleSet.get(), () -> createPlanet().planet);
+		PageImport imported = new PageImport();
+		try {
+			OGamePageReader.parseOverview(imported, chooser.getSelectedFile().toPath());
 		} catch (IOException | RuntimeException e) {
 			e.printStackTrace();
 			JOptionPane.showMessageDialog(this, "Overview parsing failed", "Unable to Import Overview", JOptionPane.ERROR_MESSAGE);
 			return;
 		}
-		theSelectedAccount.set(theSelectedAccount.get(), null);
+		int planets = applyImport(imported, cause);
 		JOptionPane.showMessageDialog(this, "Successfully imported " + planets + " planets from Overview", "Overview Imported",
 			JOptionPane.INFORMATION_MESSAGE);
 	}
 
+	private boolean isImporting;
+
+	/**
+	 * Applies parsed pages to the selected account in one transaction, recomputing production and planning once at the end instead of for
+	 * each changed value
+	 *
+	 * @param imported The parsed pages
+	 * @param cause The cause of the import
+	 * @return The number of planets imported
+	 */
+	int applyImport(PageImport imported, Object cause) {
+		return applyImport(theSelectedAccount.get(), imported, cause);
+	}
+
+	/**
+	 * Applies parsed pages to an account in one transaction. If the account is selected, production and planning are recomputed once at the
+	 * end instead of for each changed value.
+	 *
+	 * @param account The account to import into
+	 * @param imported The parsed pages
+	 * @param cause The cause of the import
+	 * @return The number of planets imported
+	 */
+	int applyImport(Account account, PageImport imported, Object cause) {
+		boolean selected = account == theSelectedAccount.get();
+		int planets;
+		isImporting = selected;
+		try (Transaction t = theConfig.lock(true, cause)) {
+			planets = imported.applyTo(account, theSelectedRuleSet.get(), () -> createPlanet(account).get());
+		} finally {
+			isImporting = false;
+		}
+		if (selected) {
+			theSelectedAccount.set(account, null);
+			refreshProduction();
+		}
+		return planets;
+	}
+
+	private void watchImportFolder(String folder) {
+		if (theImportWatcher != null) {
+			theImportWatcher.close();
+			theImportWatcher = null;
+		}
+		if (folder == null || folder.isEmpty()) {
+			return;
+		}
+		try {
+			String imported = folder.equals(theImportedPagesFolder.get()) ? theImportedPages.get() : null;
+			theImportWatcher = new PageFolderWatcher(Paths.get(folder), this::autoImport, imported, record -> {
+				theImportedPagesFolder.set(folder, null);
+				theImportedPages.set(record, null);
+			});
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Could not watch import folder " + folder);
+			e.printStackTrace();
+		}
+	}
+
+	private void browseImportFolder(Object cause) {
+		JFileChooser chooser = new JFileChooser();
+		chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+		if (theImportFolder.get() != null) {
+			chooser.setCurrentDirectory(new File(theImportFolder.get()));
+		}
+		if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+		theImportFolder.set(chooser.getSelectedFile().getPath(), cause);
+	}
+
+	/**
+	 * Imports a page from the watched import folder into the account for its universe. If there are several accounts in the universe, the
+	 * one named for the player is preferred.
+	 *
+	 * @param page The page to import
+	 * @return Whether the page was imported
+	 */
+	private boolean autoImport(PageFolderWatcher.WatchedPage page) {
+		Account account = null;
+		for (Account a : theAccounts.getValues()) {
+			if (page.universeName == null || !page.universeName.equalsIgnoreCase(a.getUniverse().getName())) {
+				continue;
+			}
+			if (account == null || (page.playerName != null && page.playerName.equals(a.getName()))) {
+				account = a;
+			}
+		}
+		if (account == null) {
+			System.err.println("No account found for universe " + page.universeName + " to import " + page.file);
+			return false;
+		}
+		if (page.imported.getMoonCount() > 0 && page.imported.getMatchedMoonCount(account) == 0) {
+			// Not recorded as imported, so the page is offered again when it (or the account's planets) change
+			System.err.println("None of the moons in " + page + " belong to a planet of " + account.getName());
+			return false;
+		}
+		applyImport(account, page.imported, page);
+		return true;
+	}
+
 	public static void main(String[] args) {
-		List<OGameRuleSet> ruleSets = new ArrayList<>();
-		ruleSets.addAll(Arrays.asList(//
-			new OGameRuleSet710(), new OGameRuleSet711(), new OGameRuleSet750(), new OGameRuleSet800pl7()));
+		List<OGameRuleSet> ruleSets = OGameRuleSets.ALL;
 		ObservableUiBuilder builder = ObservableSwingUtils.buildUI()//
 			.systemLandF()//
 			.withOldConfig("ogame-config").withOldConfig("OGameUI")//
@@ -1155,11 +1331,11 @@ public class OGameUniGui extends JPanel {
 			return theRoi;
 		}
 
-		void set(int from, boolean paid, UpgradeCost cost, Duration roi) {
-			theFrom = from;
-			isPaid = paid;
-			this.theCost = cost;
-			this.theRoi = roi;
+		void set(UpgradePlanResult result) {
+			theFrom = result.from;
+			isPaid = result.paid;
+			this.theCost = result.cost;
+			this.theRoi = result.roi;
 		}
 
 		@Override
@@ -1178,6 +1354,21 @@ public class OGameUniGui extends JPanel {
 		}
 	}
 
+	/** The planned cost and ROI of a {@link PlannedAccountUpgrade} */
+	static class UpgradePlanResult {
+		final int from;
+		final boolean paid;
+		final UpgradeCost cost;
+		final Duration roi;
+
+		UpgradePlanResult(int from, boolean paid, UpgradeCost cost, Duration roi) {
+			this.from = from;
+			this.paid = paid;
+			this.cost = cost;
+			this.roi = roi;
+		}
+	}
+
 	enum ProductionUpgradeType {
 		None, // Does not affect production
 		Planet, // Affects production on the upgraded planet only
@@ -1185,7 +1376,7 @@ public class OGameUniGui extends JPanel {
 		Astro // Affects overall production, but no planet-by-planet recomputation needed
 	}
 
-	static void plan(OGameRuleSet rules, UpgradeAccount account, PlannedAccountUpgrade upgrade,
+	static UpgradePlanResult plan(OGameRuleSet rules, UpgradeAccount account, PlannedAccountUpgrade upgrade,
 		List<PlanetWithProduction> planetProductions, PlanetWithProduction total) {
 		UpgradePlanet planet = upgrade.getPlanet() == null ? null : account.getPlanets().getUpgradePlanet(upgrade.getPlanet());
 		UpgradeRockyBody body;
@@ -1200,7 +1391,7 @@ public class OGameUniGui extends JPanel {
 		boolean paid = isPaid(upgrade.getUpgrade(), account, body, from);
 		account.withUpgrade(upgrade.getUpgrade());
 		if (paid) {
-			upgrade.set(from, paid, null, null);
+			return new UpgradePlanResult(from, paid, null, null);
 		} else {
 			UpgradeCost cost = rules.economy().getUpgradeCost(account, body, upgrade.getUpgrade().getType(), from,
 				from + upgrade.getUpgrade().getQuantity());
@@ -1257,7 +1448,7 @@ public class OGameUniGui extends JPanel {
 			} else {
 				roi = null;
 			}
-			upgrade.set(from, paid, cost, roi);
+			return new UpgradePlanResult(from, paid, cost, roi);
 		}
 	}
 
@@ -0,0 +1,325 @@
+package org.quark.ogame.uni.ui;
+
+import java.awt.EventQueue;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.quark.ogame.uni.OGamePageReader;
+import org.quark.ogame.uni.OGamePageReader.PageImport;
+
+/**
+ * Watches a folder for saved OGame pages (empire views and overviews), parsing each new or modified page and handing it to a listener to
+ * import. Pages whose content is the same as when they were last imported are skipped without being parsed. The record of imported pages
+ * is handed to a persister so that it survives restarts, and pages whose size and modification time are unchanged since they were imported
+ * are not even read.
+ */
+public class PageFolderWatcher implements AutoCloseable {
+	/** The types of pages that can be imported */
+	public enum PageType {
+		EmpirePlanets, EmpireMoons, Overview;
+	}
+
+	/** A parsed page from the watched folder */
+	public static class WatchedPage {
+		public final Path file;
+		public final PageType type;
+		/** The name of the universe the page is from, or null if it could not be determined */
+		public final String universeName;
+		/** The name of the player the page is from, or null if it could not be determined */
+		public final String playerName;
+		public final PageImport imported;
+
+		WatchedPage(Path file, PageType type, String universeName, String playerName, PageImport imported) {
+			this.file = file;
+			this.type = type;
+			this.universeName = universeName;
+			this.playerName = playerName;
+			this.imported = imported;
+		}
+
+		@Override
+		public String toString() {
+			return file.getFileName() + " (" + type + ", " + universeName + ")";
+		}
+	}
+
+	/** How long a file must go without changes before it is read, since browsers save pages in several writes */
+	private static final long QUIET_PERIOD = 1000;
+	/** The number of bytes at the start of a page in which to look for its type and universe */
+	private static final int HEADER_LENGTH = 64 * 1024;
+	private static final Pattern META_PATTERN = Pattern
+		.compile("<meta\\s+name=\"(?<name>ogame-universe-name|ogame-player-name)\"\\s+content=\"(?<content>[^\"]*)\"");
+	/**
+	 * Where a saved page records its own URL: the comment browsers add when saving, a base or canonical link, or the Open Graph URL. Links
+	 * elsewhere in the page (e.g. to the other empire tab) are not considered.
+	 */
+	private static final Pattern PAGE_URL_PATTERN = Pattern.compile("<!--\\s*saved from url=\\(\\d+\\)(?<saved>[^\\s>]+)"//
+		+ "|<base\\s+href=\"(?<base>[^\"]*)\""//
+		+ "|<link\\s+rel=\"canonical\"\\s+href=\"(?<canonical>[^\"]*)\""//
+		+ "|<meta\\s+property=\"og:url\"\\s+content=\"(?<og>[^\"]*)\"");
+	private static final Pattern QUERY_PARAM_PATTERN = Pattern.compile("[?&;](?:amp;)?(?<name>component|page|planetType)=(?<value>[^&#\"]*)");
+
+	/** What is known about a page as of the last time it was imported */
+	private static class ImportRecord {
+		final long size;
+		final long modified;
+		final String hash;
+
+		ImportRecord(long size, long modified, String hash) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
+	}
+
+	private final Path theFolder;
+	private final Predicate<WatchedPage> theListener;
+	/** The size, modification time and content hash of each file (by name) as of the last time it was imported */
+	private final Map<String, ImportRecord> theImported;
+	private final Consumer<String> thePersister;
+	private final WatchService theWatchService;
+	private final Thread theThread;
+
+	/**
+	 * @param folder The folder to watch
+	 * @param listener Receives each page that has changed, on the event thread, and returns whether it was imported. Pages that were not
+	 *        imported will be offered again when they next change.
+	 * @param imported The record of imported pages last given to the persister, or null if there is none
+	 * @param persister Receives the record of imported pages, on the event thread, each time a page is imported
+	 * @throws IOException If the folder cannot be watched
+	 */
+	public PageFolderWatcher(Path folder, Predicate<WatchedPage> listener, String imported, Consumer<String> persister)
+		throws IOException {
+		theFolder = folder;
+		theListener = listener;
+		theImported = new ConcurrentHashMap<>();
+		thePersister = persister;
+		if (imported != null) {
+			for (String line : imported.split("\n")) {
+				String[] fields = line.split("\t");
+				if (fields.length == 4) {
+					try {
+						theImported.put(fields[0], new ImportRecord(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]));
+					} catch (NumberFormatException e) {
+						// Ignore the bad record; the file will just be read again
+					}
+				}
+			}
+		}
+		theWatchService = FileSystems.getDefault().newWatchService();
+		folder.register(theWatchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		theThread = new Thread(this::watch, "OGame Page Watcher");
+		theThread.setDaemon(true);
+		theThread.start();
+	}
+
+	public Path getFolder() {
+		return theFolder;
+	}
+
+	@Override
+	public void close() {
+		try {
+			theWatchService.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void watch() {
+		// Files changed but not yet read, with the time of their last change
+		Map<Path, Long> pending = new LinkedHashMap<>();
+		try (DirectoryStream<Path> existing = Files.newDirectoryStream(theFolder)) {
+			long now = System.currentTimeMillis();
+			for (Path file : existing) {
+				pending.put(file, now - QUIET_PERIOD);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		try {
+			while (true) {
+				WatchKey key = theWatchService.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS);
+				long now = System.currentTimeMillis();
+				if (key != null) {
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.kind() != StandardWatchEventKinds.OVERFLOW) {
+							pending.put(theFolder.resolve((Path) event.context()), now);
+						}
+					}
+					if (!key.reset()) {
+						return; // Folder is gone
+					}
+				}
+				Iterator<Map.Entry<Path, Long>> iter = pending.entrySet().iterator();
+				while (iter.hasNext()) {
+					Map.Entry<Path, Long> entry = iter.next();
+					if (now - entry.getValue() >= QUIET_PERIOD) {
+						iter.remove();
+						read(entry.getKey());
+					}
+				}
+			}
+		} catch (ClosedWatchServiceException | InterruptedException e) {
+			// Closed, we're done
+		}
+	}
+
+	private void read(Path file) {
+		String fileName = file.getFileName().toString().toLowerCase();
+		if (!Files.isRegularFile(file) || !(fileName.endsWith(".html") || fileName.endsWith(".htm"))) {
+			return;
+		}
+		try {
+			String name = file.getFileName().toString();
+			ImportRecord record = theImported.get(name);
+			long size = Files.size(file);
+			long modified = Files.getLastModifiedTime(file).toMillis();
+			if (record != null && record.size == size && record.modified == modified) {
+				return; // Untouched since the last import
+			}
+			// Read the file once, then hash, classify and parse it from memory
+			byte[] content = Files.readAllBytes(file);
+			String hash = hash(content);
+			if (record != null && hash.equals(record.hash)) {
+				// Touched, but unchanged since the last import. Remember the new size and time so it isn't read again.
+				ImportRecord touched = new ImportRecord(size, modified, hash);
+				EventQueue.invokeLater(() -> {
+					if (theImported.replace(name, record, touched)) {
+						thePersister.accept(formatImported());
+					}
+				});
+				return;
+			}
+			String headerText = new String(content, 0, Math.min(content.length, HEADER_LENGTH), StandardCharsets.UTF_8);
+			PageType type = getType(headerText, fileName);
+			if (type == null) {
+				return;
+			}
+			String universeName = null, playerName = null;
+			Matcher m = META_PATTERN.matcher(headerText);
+			while (m.find()) {
+				if (m.group("name").equals("ogame-universe-name")) {
+					universeName = m.group("content");
+				} else {
+					playerName = m.group("content");
+				}
+			}
+			PageImport imported = new PageImport();
+			try (Reader reader = OGamePageReader.openPage(content)) {
+				switch (type) {
+				case EmpirePlanets:
+					OGamePageReader.parseEmpireView(imported, reader);
+					break;
+				case EmpireMoons:
+					OGamePageReader.parseEmpireMoonView(imported, reader);
+					break;
+				case Overview:
+					OGamePageReader.parseOverview(imported, reader);
+					break;
+				}
+			}
+			WatchedPage page = new WatchedPage(file, type, universeName, playerName, imported);
+			EventQueue.invokeLater(() -> {
+				if (theListener.test(page)) {
+					theImported.put(name, new ImportRecord(size, modified, hash));
+					thePersister.accept(formatImported());
+				}
+			});
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Could not import " + file);
+			e.printStackTrace();
+		}
+	}
+
+	private String formatImported() {
+		StringBuilder str = new StringBuilder();
+		for (Map.Entry<String, ImportRecord> entry : theImported.entrySet()) {
+			if (str.length() > 0) {
+				str.append('\n');
+			}
+			str.append(entry.getKey()).append('\t').append(entry.getValue().size).append('\t').append(entry.getValue().modified).append('\t')
+				.append(entry.getValue().hash);
+		}
+		return str.toString();
+	}
+
+	/**
+	 * Determines the type of a page from the component and planet type parameters of the page's own URL. Pages that don't record their
+	 * URL are classified by their structure, with empire views treated as moon views only if the file is named for moons.
+	 *
+	 * @param header The first part of the page
+	 * @param fileName The name of the page's file
+	 * @return The type of the page, or null if it is not a page that can be imported
+	 */
+	static PageType getType(String header, String fileName) {
+		Matcher urlMatcher = PAGE_URL_PATTERN.matcher(header);
+		while (urlMatcher.find()) {
+			String url = urlMatcher.group("saved");
+			if (url == null) {
+				url = urlMatcher.group("base");
+			}
+			if (url == null) {
+				url = urlMatcher.group("canonical");
+			}
+			if (url == null) {
+				url = urlMatcher.group("og");
+			}
+			String component = null, planetType = null;
+			Matcher param = QUERY_PARAM_PATTERN.matcher(url);
+			while (param.find()) {
+				if (param.group("name").equals("planetType")) {
+					planetType = param.group("value");
+				} else if (component == null || param.group("name").equals("component")) {
+					component = param.group("value");
+				}
+			}
+			if ("empire".equals(component)) {
+				return "1".equals(planetType) ? PageType.EmpireMoons : PageType.EmpirePlanets;
+			} else if ("overview".equals(component)) {
+				return PageType.Overview;
+			} else if (component != null) {
+				return null; // Some other OGame page
+			}
+		}
+		if (header.contains("planetHead")) {
+			return fileName.contains("moon") ? PageType.EmpireMoons : PageType.EmpirePlanets;
+		} else if (header.contains("\"planetList\"")) {
+			return PageType.Overview;
+		} else {
+			return null;
+		}
+	}
+
+	private static String hash(byte[] content) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is required to be supported", e);
+		}
+		return Base64.getEncoder().encodeToString(digest.digest(content));
+	}
+}
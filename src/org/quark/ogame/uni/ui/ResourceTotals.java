@@ -0,0 +1,121 @@
+package org.quark.ogame.uni.ui;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+import org.observe.Observable;
+import org.observe.ObservableValue;
+import org.observe.SettableValue;
+import org.observe.SimpleObservable;
+import org.observe.collect.ObservableCollection;
+import org.qommons.collect.ElementId;
+
+/**
+ * Running metal, crystal and deuterium totals over a collection. Each element's contribution is remembered, so an add, remove or update
+ * only applies that element's difference instead of re-summing the whole collection.
+ *
+ * @param <E> The type of elements to total
+ */
+class ResourceTotals<E> {
+	private final ToLongFunction<? super E> theMetalFn;
+	private final ToLongFunction<? super E> theCrystalFn;
+	private final ToLongFunction<? super E> theDeuteriumFn;
+	/** The metal, crystal and deuterium each element contributed to the totals */
+	private final Map<ElementId, long[]> theContributions;
+	private long theMetal;
+	private long theCrystal;
+	private long theDeuterium;
+
+	private final SettableValue<Long> theMetalValue;
+	private final SettableValue<Long> theCrystalValue;
+	private final SettableValue<Long> theDeuteriumValue;
+	private final SimpleObservable<Void> theChanges;
+
+	ResourceTotals(ObservableCollection<? extends E> collection, ToLongFunction<? super E> metal, ToLongFunction<? super E> crystal,
+		ToLongFunction<? super E> deuterium) {
+		theMetalFn = metal;
+		theCrystalFn = crystal;
+		theDeuteriumFn = deuterium;
+		theContributions = new HashMap<>();
+		theMetalValue = SettableValue.build(Long.class).safe(false).withValue(0L).build();
+		theCrystalValue = SettableValue.build(Long.class).safe(false).withValue(0L).build();
+		theDeuteriumValue = SettableValue.build(Long.class).safe(false).withValue(0L).build();
+		theChanges = SimpleObservable.build().safe(false).build();
+		collection.subscribe(evt -> {
+			long[] old = theContributions.remove(evt.getElementId());
+			long[] contribution;
+			switch (evt.getType()) {
+			case add:
+			case set:
+				contribution = new long[] { theMetalFn.applyAsLong(evt.getNewValue()), theCrystalFn.applyAsLong(evt.getNewValue()),
+					theDeuteriumFn.applyAsLong(evt.getNewValue()) };
+				theContributions.put(evt.getElementId(), contribution);
+				break;
+			default:
+				contribution = null;
+				break;
+			}
+			adjust(old, contribution);
+		}, true);
+	}
+
+	private void adjust(long[] old, long[] contribution) {
+		long dMetal = 0, dCrystal = 0, dDeuterium = 0;
+		if (old != null) {
+			dMetal -= old[0];
+			dCrystal -= old[1];
+			dDeuterium -= old[2];
+		}
+		if (contribution != null) {
+			dMetal += contribution[0];
+			dCrystal += contribution[1];
+			dDeuterium += contribution[2];
+		}
+		if (dMetal == 0 && dCrystal == 0 && dDeuterium == 0) {
+			return;
+		}
+		theMetal += dMetal;
+		theCrystal += dCrystal;
+		theDeuterium += dDeuterium;
+		if (dMetal != 0) {
+			theMetalValue.set(theMetal, null);
+		}
+		if (dCrystal != 0) {
+			theCrystalValue.set(theCrystal, null);
+		}
+		if (dDeuterium != 0) {
+			theDeuteriumValue.set(theDeuterium, null);
+		}
+		theChanges.onNext(null);
+	}
+
+	long getMetal() {
+		return theMetal;
+	}
+
+	long getCrystal() {
+		return theCrystal;
+	}
+
+	long getDeuterium() {
+		return theDeuterium;
+	}
+
+	ObservableValue<Long> observeMetal() {
+		return theMetalValue;
+	}
+
+	ObservableValue<Long> observeCrystal() {
+		return theCrystalValue;
+	}
+
+	ObservableValue<Long> observeDeuterium() {
+		return theDeuteriumValue;
+	}
+
+	/** @return An observable that fires whenever any of the totals changes */
+	Observable<Void> changes() {
+		return theChanges;
+	}
+}
@@ -470,6 +470,12 @@ public class UpgradePanel extends JPanel {
 				.addTextField("Target Planet:", sequenceGenerator.getTargetPlanet(), SpinnerFormat.INT, f -> f.fill())//
 				.addTextField("New Planet Slot:", sequenceGenerator.getNewPlanetSlot(), SpinnerFormat.INT, f -> f.fill())//
 				.addTextField("New Planet Temp:", sequenceGenerator.getNewPlanetTemp(), SpinnerFormat.INT, f -> f.fill())//
+				.addTextField("Threads:", sequenceGenerator.getCoreThreads(), SpinnerFormat.INT, f -> f.fill())//
+				.addCheckField("Optimize Order:", sequenceGenerator.isMutationOptimized(), null)//
+				.addTextField("Optimization Rounds:", sequenceGenerator.getMutationRounds(), SpinnerFormat.INT,
+					f -> f.fill().visibleWhen(sequenceGenerator.isMutationOptimized()))//
+				.addTextField("Optimization Time:", sequenceGenerator.getMutationBudget(), SpinnerFormat.flexDuration(DURATION_FORMAT),
+					f -> f.fill().visibleWhen(sequenceGenerator.isMutationOptimized()))//
 				.addButton("Generate", __ -> genRoiSequence(account, sequenceGenerator),
 					btn -> btn.disableWith(sequenceGenerator.isActive())))
 			.getWindow();
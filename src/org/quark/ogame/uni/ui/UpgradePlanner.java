@@ -0,0 +1,339 @@
+package org.quark.ogame.uni.ui;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.qommons.threading.QommonsTimer;
+import org.quark.ogame.uni.Account;
+import org.quark.ogame.uni.AccountUpgradeType;
+import org.quark.ogame.uni.OGameEconomyRuleSet.Production;
+import org.quark.ogame.uni.OGameRuleSet;
+import org.quark.ogame.uni.Planet;
+import org.quark.ogame.uni.UpgradeAccount;
+import org.quark.ogame.uni.ui.OGameUniGui.PlannedAccountUpgrade;
+import org.quark.ogame.uni.ui.OGameUniGui.UpgradePlanResult;
+
+/**
+ * Plans the costs and ROIs of an account's planned upgrades off of the Swing event thread.
+ *
+ * <p>
+ * Each {@link #submit(Request) request} is a snapshot of the planning inputs taken on the event thread. Requests are planned one at a time
+ * on a background thread, against an {@link UpgradeAccount} overlay that belongs to the planner, so nothing the UI displays is modified
+ * while planning. A new request supersedes any request that has not started yet and cancels one that is being planned. When planning
+ * completes for the latest request, its {@link Result} is handed to the listener on the event thread to be published in one batch.
+ * </p>
+ *
+ * <p>
+ * The planner keeps a {@link PlanningCheckpoint} before each upgrade, so that a request whose account and planets have not changed only
+ * needs to re-plan from the first upgrade that differs from the last request.
+ * </p>
+ *
+ * <p>
+ * The background thread reads the account's current state while planning. Any change to the account results in a new request, which
+ * cancels the planning run and discards its results, so inconsistent reads are never published.
+ * </p>
+ */
+class UpgradePlanner {
+	/** A snapshot of the inputs to upgrade planning */
+	static class Request {
+		final Account account;
+		final OGameRuleSet rules;
+		final List<PlannedAccountUpgrade> upgrades;
+		final List<Planet> planets;
+		/** The actual production (energy, metal, crystal, deuterium) of each planet, then of the total */
+		final Production[] production;
+		boolean isBaseDirty;
+		long generation;
+		UpgradeAccount overlay;
+
+		/**
+		 * @param account The account to plan for
+		 * @param rules The rules to plan with
+		 * @param upgrades The upgrades to plan
+		 * @param planets The account's planets with their actual production, in account order
+		 * @param total The total production of the account
+		 * @param baseDirty Whether the account, planets, or production may have changed since the last request
+		 */
+		Request(Account account, OGameRuleSet rules, List<PlannedAccountUpgrade> upgrades, List<PlanetWithProduction> planets,
+			PlanetWithProduction total, boolean baseDirty) {
+			this.account = account;
+			this.rules = rules;
+			this.upgrades = upgrades;
+			this.planets = new ArrayList<>(planets.size());
+			production = new Production[(planets.size() + 1) * 4];
+			int p = 0;
+			for (PlanetWithProduction planet : planets) {
+				this.planets.add(planet.planet);
+				p = storeProduction(planet, production, p, false);
+			}
+			storeProduction(total, production, p, false);
+			isBaseDirty = baseDirty;
+		}
+	}
+
+	/** The result of planning a request */
+	static class Result {
+		final Request request;
+		final List<PlannedAccountUpgrade> upgrades;
+		final List<UpgradePlanResult> results;
+		/** The upgrade production (energy, metal, crystal, deuterium) of each planet, then of the total */
+		final Production[] production;
+		/** The fusion and crawler utilization of each planet */
+		final int[] utilization;
+
+		Result(Request request, List<PlanningCheckpoint> checkpoints, List<PlanetWithProduction> planets, PlanetWithProduction total) {
+			this.request = request;
+			upgrades = new ArrayList<>(checkpoints.size());
+			results = new ArrayList<>(checkpoints.size());
+			for (PlanningCheckpoint checkpoint : checkpoints) {
+				upgrades.add(checkpoint.theUpgrade);
+				results.add(checkpoint.theResult);
+			}
+			production = new Production[(planets.size() + 1) * 4];
+			utilization = new int[planets.size() * 2];
+			storeState(planets, total, production, utilization);
+		}
+
+		/**
+		 * Applies this planning to the UI's state. Must be called on the event thread.
+		 *
+		 * @param account The overlay account to apply the planned upgrades to
+		 * @param planets The planets to apply the planned production to
+		 * @param total The total to apply the planned production to
+		 * @return Whether the planning was applied, false if the account or its planets have changed since the request
+		 */
+		boolean apply(UpgradeAccount account, List<PlanetWithProduction> planets, PlanetWithProduction total) {
+			if (account == null || account.getWrapped() != request.account || planets.size() != request.planets.size()) {
+				return false;
+			}
+			for (int i = 0; i < planets.size(); i++) {
+				if (planets.get(i).planet != request.planets.get(i)) {
+					return false;
+				}
+			}
+			account.clearUpgrades();
+			for (int i = 0; i < upgrades.size(); i++) {
+				account.withUpgrade(upgrades.get(i).getUpgrade());
+				upgrades.get(i).set(results.get(i));
+			}
+			restoreState(planets, total, production, utilization);
+			return true;
+		}
+	}
+
+	private final Consumer<Result> theListener;
+	// Guarded by this
+	private Request theRequest;
+	private boolean isRunning;
+	private long theGeneration;
+
+	// Confined to the event thread
+	private UpgradeAccount theOverlay;
+
+	// Confined to the planning thread
+	private UpgradeAccount thePlannedOverlay;
+	private OGameRuleSet thePlannedRules;
+	private final List<PlanetWithProduction> thePlanets;
+	private PlanetWithProduction theTotal;
+	/** The planning state before each planned upgrade as of the last planning */
+	private final List<PlanningCheckpoint> theCheckpoints;
+
+	/** @param listener Receives the result of each planning that is not superseded, on the event thread */
+	UpgradePlanner(Consumer<Result> listener) {
+		theListener = listener;
+		thePlanets = new ArrayList<>();
+		theCheckpoints = new ArrayList<>();
+	}
+
+	/**
+	 * Queues a request for planning, cancelling any planning that is in progress. Must be called on the event thread.
+	 *
+	 * @param request The request to plan
+	 */
+	void submit(Request request) {
+		if (theOverlay == null || theOverlay.getWrapped() != request.account) {
+			// The overlay listens to the account's planets, so create it here on the event thread
+			theOverlay = new UpgradeAccount(request.account);
+			theOverlay.getPlanets();
+		}
+		request.overlay = theOverlay;
+		synchronized (this) {
+			request.generation = ++theGeneration;
+			if (theRequest != null && theRequest.isBaseDirty) {
+				request.isBaseDirty = true; // The superseded request never ran
+			}
+			theRequest = request;
+			if (isRunning) {
+				return;
+			}
+			isRunning = true;
+		}
+		QommonsTimer.getCommonInstance().offload(this::run);
+	}
+
+	private synchronized boolean isCurrent(Request request) {
+		return request.generation == theGeneration;
+	}
+
+	private void run() {
+		while (true) {
+			Request request;
+			synchronized (this) {
+				request = theRequest;
+				theRequest = null;
+				if (request == null) {
+					isRunning = false;
+					return;
+				}
+			}
+			Result result;
+			try {
+				result = plan(request);
+			} catch (RuntimeException e) {
+				result = null;
+				thePlannedOverlay = null; // The checkpoints may be incomplete, so re-plan from scratch next time
+				// A superseded request may just have read an account that was being modified, and will be re-planned anyway.
+				// Otherwise it's a real error, so throw it on the event thread to be reported.
+				if (isCurrent(request)) {
+					EventQueue.invokeLater(() -> {
+						if (isCurrent(request)) {
+							throw e;
+						}
+					});
+				}
+			}
+			if (result != null) {
+				Result finalResult = result;
+				EventQueue.invokeLater(() -> {
+					if (isCurrent(finalResult.request)) {
+						theListener.accept(finalResult);
+					}
+				});
+			}
+		}
+	}
+
+	private Result plan(Request request) {
+		UpgradeAccount overlay = request.overlay;
+		int start = 0;
+		if (request.isBaseDirty || overlay != thePlannedOverlay || request.rules != thePlannedRules) {
+			thePlannedOverlay = overlay;
+			thePlannedRules = request.rules;
+			theCheckpoints.clear();
+			thePlanets.clear();
+			// Start from the account's actual production, not whatever the last planning left behind
+			int p = 0;
+			for (Planet planet : request.planets) {
+				PlanetWithProduction pwp = new PlanetWithProduction(planet, overlay.getPlanets().getUpgradePlanet(planet));
+				pwp.upgradePlanet.setFusionReactorUtilization(-1);
+				pwp.upgradePlanet.setCrawlerUtilization(-1);
+				pwp.setUpgradeProduction(request.production[p], request.production[p + 1], request.production[p + 2],
+					request.production[p + 3]);
+				p += 4;
+				thePlanets.add(pwp);
+			}
+			theTotal = new PlanetWithProduction(null, null).setUpgradeProduction(request.production[p], request.production[p + 1],
+				request.production[p + 2], request.production[p + 3]);
+		} else {
+			for (PlannedAccountUpgrade upgrade : request.upgrades) {
+				if (start == theCheckpoints.size() || !theCheckpoints.get(start).matches(upgrade)) {
+					break;
+				}
+				start++;
+			}
+			if (start < theCheckpoints.size()) {
+				theCheckpoints.get(start).restore(thePlanets, theTotal);
+				theCheckpoints.subList(start, theCheckpoints.size()).clear();
+			} // else the upgrades were only appended to, and the current state is already that after the last checkpointed upgrade
+		}
+		// Replay the upgrades before the start point into the account without re-planning them
+		overlay.clearUpgrades();
+		int index = 0;
+		for (PlannedAccountUpgrade upgrade : request.upgrades) {
+			if (index++ < start) {
+				overlay.withUpgrade(upgrade.getUpgrade());
+				continue;
+			} else if (!isCurrent(request)) {
+				return null; // Superseded. The checkpoints so far are still valid for the next request.
+			}
+			PlanningCheckpoint checkpoint = new PlanningCheckpoint(upgrade, thePlanets, theTotal);
+			theCheckpoints.add(checkpoint);
+			checkpoint.theResult = OGameUniGui.plan(request.rules, overlay, upgrade, thePlanets, theTotal);
+		}
+		return new Result(request, theCheckpoints, thePlanets, theTotal);
+	}
+
+	static int storeProduction(PlanetWithProduction planet, Production[] production, int index, boolean upgrade) {
+		production[index++] = planet.getEnergy(upgrade);
+		production[index++] = planet.getMetal(upgrade);
+		production[index++] = planet.getCrystal(upgrade);
+		production[index++] = planet.getDeuterium(upgrade);
+		return index;
+	}
+
+	static void storeState(List<PlanetWithProduction> planets, PlanetWithProduction total, Production[] production, int[] utilization) {
+		int p = 0, u = 0;
+		for (PlanetWithProduction planet : planets) {
+			p = storeProduction(planet, production, p, true);
+			utilization[u++] = planet.upgradePlanet.getFusionReactorUtilization();
+			utilization[u++] = planet.upgradePlanet.getCrawlerUtilization();
+		}
+		storeProduction(total, production, p, true);
+	}
+
+	static void restoreState(List<PlanetWithProduction> planets, PlanetWithProduction total, Production[] production, int[] utilization) {
+		int p = 0, u = 0;
+		for (PlanetWithProduction planet : planets) {
+			planet.setUpgradeProduction(production[p], production[p + 1], production[p + 2], production[p + 3]);
+			p += 4;
+			planet.upgradePlanet.setFusionReactorUtilization(utilization[u++]);
+			planet.upgradePlanet.setCrawlerUtilization(utilization[u++]);
+		}
+		total.setUpgradeProduction(production[p], production[p + 1], production[p + 2], production[p + 3]);
+	}
+
+	/**
+	 * The state of upgrade planning just before an upgrade was planned. Since
+	 * {@link OGameUniGui#plan(OGameRuleSet, UpgradeAccount, PlannedAccountUpgrade, List, PlanetWithProduction) planning} an upgrade
+	 * depends only on the upgrades before it, planning can be resumed from the checkpoint of the first upgrade that changes.
+	 */
+	static class PlanningCheckpoint {
+		final PlannedAccountUpgrade theUpgrade;
+		private final AccountUpgradeType theType;
+		private final long thePlanet;
+		private final boolean isMoon;
+		private final int theQuantity;
+		/** The upgrade production (energy, metal, crystal, deuterium) of each planet, then of the total */
+		private final Production[] theProduction;
+		/** The fusion and crawler utilization of each planet */
+		private final int[] theUtilization;
+		/** The result of planning the upgrade */
+		UpgradePlanResult theResult;
+
+		PlanningCheckpoint(PlannedAccountUpgrade upgrade, List<PlanetWithProduction> planets, PlanetWithProduction total) {
+			theUpgrade = upgrade;
+			theType = upgrade.getUpgrade().getType();
+			thePlanet = upgrade.getUpgrade().getPlanet();
+			isMoon = upgrade.getUpgrade().isMoon();
+			theQuantity = upgrade.getUpgrade().getQuantity();
+			theProduction = new Production[(planets.size() + 1) * 4];
+			theUtilization = new int[planets.size() * 2];
+			storeState(planets, total, theProduction, theUtilization);
+		}
+
+		/**
+		 * @param upgrade The upgrade at this checkpoint's position in the current plan
+		 * @return Whether the upgrade is the same as the one this checkpoint was taken for
+		 */
+		boolean matches(PlannedAccountUpgrade upgrade) {
+			return upgrade == theUpgrade && upgrade.getUpgrade().getType() == theType && upgrade.getUpgrade().getPlanet() == thePlanet
+				&& upgrade.getUpgrade().isMoon() == isMoon && upgrade.getUpgrade().getQuantity() == theQuantity;
+		}
+
+		void restore(List<PlanetWithProduction> planets, PlanetWithProduction total) {
+			restoreState(planets, total, theProduction, theUtilization);
+		}
+	}
+}
@@ -1,15 +1,17 @@
 package org.quark.ogame.uni.versions;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
 
-import org.qommons.collect.BetterSortedSet;
-import org.qommons.tree.BetterTreeSet;
-import org.qommons.tree.SortedTreeList;
 import org.quark.ogame.uni.Account;
 import org.quark.ogame.uni.AccountClass;
 import org.quark.ogame.uni.AccountUpgradeType;
@@ -23,8 +25,22 @@ import org.quark.ogame.uni.UpgradeCost;
 import org.quark.ogame.uni.UpgradeType;
 import org.quark.ogame.uni.Utilizable;
 
-/** The OGame economy for version 7.1.0, just after the introduction of account classes and the class-specific ships */
+/**
+ * <p>
+ * The OGame economy for version 7.1.0, just after the introduction of account classes and the class-specific ships.
+ * </p>
+ * <p>
+ * This class and its subclasses are thread-safe without locking. The level curves (production, energy, storage) are immutable tables built
+ * when the class is loaded, and the few memoized values are computed idempotently and published through final fields or volatile
+ * references, so one instance can serve any number of concurrent simulations.
+ * </p>
+ */
 public class OGameEconomy710 implements OGameEconomyRuleSet {
+	/** The highest building level for which the exponential production and energy curves are tabulated */
+	public static final int MAX_TABULATED_LEVEL = 100;
+	/** The highest energy technology level for which the fusion reactor curve is tabulated */
+	public static final int MAX_TABULATED_ENERGY = 40;
+
 	static class MineProduction {
 		final int base;
 		final double multiplier;
@@ -32,6 +48,8 @@ public class OGameEconomy710 implements OGameEconomyRuleSet {
 		final double crawlerBonus;
 		final double plasmaBonus;
 		final double energyMultiplier;
+		/** {@link #exponent} to the power of each level up to {@link OGameEconomy710#MAX_TABULATED_LEVEL} */
+		private final double[] thePowers;
 
 		MineProduction(int base, double multiplier, double exponent, double crawlerBonus, double plasmaBonus, double energyMult) {
 			this.base = base;
@@ -40,7 +58,56 @@ public class OGameEconomy710 implements OGameEconomyRuleSet {
 			this.crawlerBonus = crawlerBonus;
 			this.plasmaBonus = plasmaBonus;
 			this.energyMultiplier = energyMult;
+			thePowers = new double[MAX_TABULATED_LEVEL + 1];
+			for (int level = 0; level <= MAX_TABULATED_LEVEL; level++) {
+				thePowers[level] = Math.pow(exponent, level);
+			}
+		}
+
+		double getPower(int level) {
+			return level >= 0 && level <= MAX_TABULATED_LEVEL ? thePowers[level] : Math.pow(exponent, level);
+		}
+	}
+
+	/** 1.1 (the solar plant, fusion reactor consumption, and mine energy exponent) to the power of each level */
+	private static final double[] POW_1_1;
+	/** The fusion reactor energy exponent to the power of each level, indexed by [energy technology][level] */
+	private static final double[][] FUSION_POWERS;
+	/** The highest storage building level for which the capacity is tabulated. Much higher levels overflow a long. */
+	private static final int MAX_TABULATED_STORAGE = 50;
+	/** Storage capacity in thousands per storage building level, starting at level 0 */
+	private static final long[] STORAGE;
+
+	static {
+		POW_1_1 = new double[MAX_TABULATED_LEVEL + 1];
+		for (int level = 0; level <= MAX_TABULATED_LEVEL; level++) {
+			POW_1_1[level] = Math.pow(1.1, level);
+		}
+		FUSION_POWERS = new double[MAX_TABULATED_ENERGY + 1][MAX_TABULATED_LEVEL + 1];
+		for (int energy = 0; energy <= MAX_TABULATED_ENERGY; energy++) {
+			for (int level = 0; level <= MAX_TABULATED_LEVEL; level++) {
+				FUSION_POWERS[energy][level] = Math.pow(1.05 + (.01 * energy), level);
+			}
 		}
+		STORAGE = new long[MAX_TABULATED_STORAGE + 1];
+		for (int level = 0; level <= MAX_TABULATED_STORAGE; level++) {
+			STORAGE[level] = computeStorage(level);
+		}
+	}
+
+	static double pow11(int level) {
+		return level >= 0 && level <= MAX_TABULATED_LEVEL ? POW_1_1[level] : Math.pow(1.1, level);
+	}
+
+	static double getFusionPower(int energyTech, int level) {
+		if (energyTech >= 0 && energyTech <= MAX_TABULATED_ENERGY && level >= 0 && level <= MAX_TABULATED_LEVEL) {
+			return FUSION_POWERS[energyTech][level];
+		}
+		return Math.pow(1.05 + (.01 * energyTech), level);
+	}
+
+	private static long computeStorage(int level) {
+		return level == 0 ? 10 : 5 * (long) Math.floor(2.5 * Math.exp(20.0 / 33 * level));
 	}
 
 	static class CostDescrip {
@@ -458,31 +525,41 @@ public class OGameEconomy710 implements OGameEconomyRuleSet {
 				break;
 			}
 		}
+		for (CostDescrip cost : costs.values()) {
+			if (!cost.requirements.isEmpty()) {
+				cost.requirements = Collections.unmodifiableList(new ArrayList<>(cost.requirements));
+			}
+		}
 		COST_DESCRIPS = Collections.unmodifiableMap(costs);
 	}
 
-	/** Storage amount per storage building level, starting at level 0 */
-	private final BetterSortedSet<Long> STORAGE = new BetterTreeSet<>(false, Long::compareTo).with(10L);
+	/**
+	 * The transitive requirements of each upgrade type, compiled from {@link #getRequirements(AccountUpgradeType)} (so including any
+	 * version-specific changes) on first use. The map is never modified after it is published, and a racing thread may compile a duplicate,
+	 * which is harmless.
+	 */
+	private volatile Map<AccountUpgradeType, List<Requirement>> theRequirementClosures;
 
 	@Override
 	public Production getProduction(Account account, Planet planet, ResourceType resourceType, double energyFactor) {
-		EnumMap<ProductionSource, Integer> byType = new EnumMap<>(ProductionSource.class);
-		int totalProduced = 0;
-		int totalConsumed = 0;
+		return getProduction(account, planet, resourceType, energyFactor, new ProductionBuffer()).toProduction();
+	}
+
+	@Override
+	public ProductionBuffer getProduction(Account account, Planet planet, ResourceType resourceType, double energyFactor,
+		ProductionBuffer production) {
+		production.clear();
 		if (resourceType == ResourceType.Energy) {
 			// Mines
 			int typeAmount = getMineEnergy(METAL_PRODUCTION, //
 				planet.getMetalMine(), planet.getMetalUtilization());
-			byType.put(ProductionSource.MetalMine, -typeAmount);
-			totalConsumed+=typeAmount;
+			production.put(ProductionSource.MetalMine, -typeAmount);
 			typeAmount = getMineEnergy(CRYSTAL_PRODUCTION, //
 				planet.getCrystalMine(), planet.getCrystalUtilization());
-			byType.put(ProductionSource.CrystalMine, -typeAmount);
-			totalConsumed += typeAmount;
+			production.put(ProductionSource.CrystalMine, -typeAmount);
 			typeAmount = getMineEnergy(DEUT_PRODUCTION, //
 				planet.getDeuteriumSynthesizer(), planet.getDeuteriumUtilization());
-			byType.put(ProductionSource.DeuteriumSynthesizer, -typeAmount);
-			totalConsumed += typeAmount;
+			production.put(ProductionSource.DeuteriumSynthesizer, -typeAmount);
 			// Crawlers
 			int energyPerCrawler = 50;
 			int crawlers = getUsableCrawlers(account, planet);
@@ -494,65 +571,55 @@ public class OGameEconomy710 implements OGameEconomyRuleSet {
 				// Overclocking drains twice as much energy
 				typeAmount += crawlers * energyPerCrawler * overclock / 5;
 			}
-			byType.put(ProductionSource.Crawler, -typeAmount);
-			totalConsumed += typeAmount;
+			production.put(ProductionSource.Crawler, -typeAmount);
 
 			// Producers
-			typeAmount = (int) Math
-				.floor(20 * planet.getSolarPlant() * Math.pow(1.1, planet.getSolarPlant()) * planet.getSolarPlantUtilization() / 100.0);
-			byType.put(ProductionSource.Solar, typeAmount);
-			totalProduced += typeAmount;
-			typeAmount = (int) Math.floor(30.0 * planet.getFusionReactor() * planet.getFusionReactorUtilization() / 100.0
-				* Math.pow(1.05 + (.01 * account.getResearch().getEnergy()), planet.getFusionReactor()));
-			byType.put(ProductionSource.Fusion, typeAmount);
-			totalProduced += typeAmount;
-			typeAmount = (int) Math.floor(
-				getSatelliteEnergy(account, planet) * planet.getSolarSatellites() * 1.0 * planet.getSolarSatelliteUtilization() / 100.0);
-			byType.put(ProductionSource.Satellite, typeAmount);
-			totalProduced += typeAmount;
-			int baseProduced = totalProduced;
+			typeAmount = getSolarEnergy(planet.getSolarPlant(), planet.getSolarPlantUtilization());
+			production.put(ProductionSource.Solar, typeAmount);
+			typeAmount = getFusionEnergy(account, planet.getFusionReactor(), planet.getFusionReactorUtilization());
+			production.put(ProductionSource.Fusion, typeAmount);
+			typeAmount = getSatelliteEnergy(getSatelliteEnergy(account, planet), planet.getSolarSatellites(),
+				planet.getSolarSatelliteUtilization());
+			production.put(ProductionSource.Satellite, typeAmount);
+			int baseProduced = production.getTotalProduction();
 
 			int bonus = planet.getEnergyBonus();
 			typeAmount = (int) Math.round(baseProduced * 1.0 * bonus / 100.0);
-			byType.put(ProductionSource.Item, typeAmount);
-			totalProduced += typeAmount;
+			production.put(ProductionSource.Item, typeAmount);
 
 			if (account.getGameClass() == AccountClass.Collector) {
 				typeAmount = (int) Math.floor(baseProduced * 0.10);
-				byType.put(ProductionSource.Collector, typeAmount);
-				totalProduced += typeAmount;
+				production.put(ProductionSource.Collector, typeAmount);
 			}
 			if (account.getOfficers().isEngineer()) {
 				typeAmount = (int) Math.floor(baseProduced * 0.10);
-				byType.put(ProductionSource.Engineer, typeAmount);
-				totalProduced += typeAmount;
+				production.put(ProductionSource.Engineer, typeAmount);
 			}
 			if (account.getOfficers().isCommandingStaff()) {
 				typeAmount = (int) Math.floor(baseProduced * 0.02);
-				byType.put(ProductionSource.CommandingStaff, typeAmount);
-				totalProduced += typeAmount;
+				production.put(ProductionSource.CommandingStaff, typeAmount);
 			}
 		} else {
-			MineProduction production = null;
+			MineProduction mine = null;
 			int level = 0, bonus = 0, utilization = 0;
 			ProductionSource mineType=null;
 			switch (resourceType) {
 			case Metal:
-				production = METAL_PRODUCTION;
+				mine = METAL_PRODUCTION;
 				level = planet.getMetalMine();
 				bonus = planet.getMetalBonus();
 				utilization = planet.getMetalUtilization();
 				mineType = ProductionSource.MetalMine;
 				break;
 			case Crystal:
-				production = CRYSTAL_PRODUCTION;
+				mine = CRYSTAL_PRODUCTION;
 				level = planet.getCrystalMine();
 				bonus = planet.getCrystalBonus();
 				utilization = planet.getCrystalUtilization();
 				mineType = ProductionSource.CrystalMine;
 				break;
 			case Deuterium:
-				production = DEUT_PRODUCTION;
+				mine = DEUT_PRODUCTION;
 				level = planet.getDeuteriumSynthesizer();
 				bonus = planet.getDeuteriumBonus();
 				utilization = planet.getDeuteriumUtilization();
@@ -561,7 +628,7 @@ public class OGameEconomy710 implements OGameEconomyRuleSet {
 			case Energy:
 				break;
 			}
-			if (production == null) {
+			if (mine == null) {
 				throw new IllegalStateException();
 			}
 
@@ -570,12 +637,11 @@ public class OGameEconomy710 implements OGameEconomyRuleSet {
 			} else if (energyFactor > 1) {
 				energyFactor=1;
 			}
-			int typeAmount = production.base * account.getUniverse().getEconomySpeed();
-			byType.put(ProductionSource.Base, typeAmount);
-			totalProduced += typeAmount;
+			int typeAmount = mine.base * account.getUniverse().getEconomySpeed();
+			production.put(ProductionSource.Base, typeAmount);
 
 			// Mine production
-			double mineP = production.multiplier * level * Math.pow(production.exponent, level) * account.getUniverse().getEconomySpeed()
+			double mineP = mine.multiplier * level * mine.getPower(level) * account.getUniverse().getEconomySpeed()
 				* energyFactor * (utilization / 100.0);
 			if (resourceType == ResourceType.Deuterium) {
 				int avgT = (planet.getMinimumTemperature() + planet.getMaximumTemperature()) / 2;
@@ -584,34 +650,30 @@ public class OGameEconomy710 implements OGameEconomyRuleSet {
 			}
 			int mineProduction = (int) Math.floor(mineP);
 			typeAmount = mineProduction;
-			byType.put(mineType, typeAmount);
-			totalProduced += typeAmount;
+			production.put(mineType, typeAmount);
 
 			double multiplier = getSlotProductionMultiplier(account, planet, resourceType);
 			if (multiplier > 0) {
-				typeAmount = (int) Math.round(totalProduced * multiplier);
+				typeAmount = (int) Math.round(production.getTotalProduction() * multiplier);
 				mineProduction = (int) Math.round((1 + multiplier) * mineProduction);
-				byType.put(ProductionSource.Slot, typeAmount);
-				totalProduced += typeAmount;
+				production.put(ProductionSource.Slot, typeAmount);
 			} else {
-				byType.put(ProductionSource.Slot, 0);
+				production.put(ProductionSource.Slot, 0);
 			}
 
 			// Crawler production
 			int crawlers = getUsableCrawlers(account, planet);
-			double crawlerBonus = production.crawlerBonus;
+			double crawlerBonus = mine.crawlerBonus;
 			if (account.getGameClass() == AccountClass.Collector) {
 				crawlerBonus *= 1.5;
 			}
 			typeAmount = (int) Math
 				.round(mineProduction * crawlerBonus * crawlers * (planet.getCrawlerUtilization() / 100.0));
-			byType.put(ProductionSource.Crawler, typeAmount);
-			totalProduced += typeAmount;
+			production.put(ProductionSource.Crawler, typeAmount);
 
 			// Plasma bonus
-			typeAmount = (int) Math.round(mineProduction * production.plasmaBonus / 100 * account.getResearch().getPlasma());
-			byType.put(ProductionSource.Plasma, typeAmount);
-			totalProduced += typeAmount;
+			typeAmount = (int) Math.round(mineProduction * mine.plasmaBonus / 100 * account.getResearch().getPlasma());
+			production.put(ProductionSource.Plasma, typeAmount);
 
 			// Class bonus
 			if (account.getGameClass() == AccountClass.Collector) {
@@ -621,43 +683,160 @@ public class OGameEconomy710 implements OGameEconomyRuleSet {
 			} else {
 				typeAmount = 0;
 			}
-			byType.put(ProductionSource.Collector, typeAmount);
-			totalProduced += typeAmount;
+			production.put(ProductionSource.Collector, typeAmount);
 
 			// Fusion consumption
 			if (resourceType == ResourceType.Deuterium) {
-				typeAmount = -(int) Math.floor(10.0 * planet.getFusionReactor() * Math.pow(1.1, planet.getFusionReactor())
+				typeAmount = -(int) Math.floor(10.0 * planet.getFusionReactor() * pow11(planet.getFusionReactor())
 					* (planet.getFusionReactorUtilization() / 100.0) * account.getUniverse().getEconomySpeed());
-				byType.put(ProductionSource.Fusion, typeAmount);
-				totalConsumed += -typeAmount;
+				production.put(ProductionSource.Fusion, typeAmount);
 			} else {
-				byType.put(ProductionSource.Fusion, 0);
+				production.put(ProductionSource.Fusion, 0);
 			}
 
 			// Active items
 			typeAmount = (int) Math.round(mineProduction * 1.0 * bonus / 100.0);
-			byType.put(ProductionSource.Item, typeAmount);
-			totalProduced += typeAmount;
+			production.put(ProductionSource.Item, typeAmount);
 
 			// Officers
 			typeAmount = 0;
 			if (account.getOfficers().isGeologist()) {
 				typeAmount = (int) Math.round(mineProduction * 0.1);
 			}
-			byType.put(ProductionSource.Geologist, typeAmount);
-			totalProduced += typeAmount;
+			production.put(ProductionSource.Geologist, typeAmount);
 			typeAmount = 0;
 			if (account.getOfficers().isCommandingStaff()) {
 				typeAmount = (int) Math.round(mineProduction * 0.02);
 			}
-			byType.put(ProductionSource.CommandingStaff, typeAmount);
-			totalProduced += typeAmount;
+			production.put(ProductionSource.CommandingStaff, typeAmount);
 		}
-		return new Production(byType, totalProduced, totalConsumed);
+		return production;
+	}
+
+	protected int getSolarEnergy(int level, int utilization) {
+		return (int) Math.floor(20 * level * pow11(level) * utilization / 100.0);
+	}
+
+	protected int getFusionEnergy(Account account, int level, int utilization) {
+		return (int) Math.floor(30.0 * level * utilization / 100.0 * getFusionPower(account.getResearch().getEnergy(), level));
+	}
+
+	protected int getSatelliteEnergy(int satelliteEnergy, int satellites, int utilization) {
+		return (int) Math.floor(satelliteEnergy * satellites * 1.0 * utilization / 100.0);
+	}
+
+	/**
+	 * @param account The account
+	 * @param planet The planet
+	 * @param baseProduced The energy produced by the planet's solar plant, fusion reactor and satellites
+	 * @return The total of all bonuses applied to the base energy production
+	 */
+	protected int getEnergyBonus(Account account, Planet planet, int baseProduced) {
+		int bonus = (int) Math.round(baseProduced * 1.0 * planet.getEnergyBonus() / 100.0);
+		if (account.getGameClass() == AccountClass.Collector) {
+			bonus += (int) Math.floor(baseProduced * 0.10);
+		}
+		if (account.getOfficers().isEngineer()) {
+			bonus += (int) Math.floor(baseProduced * 0.10);
+		}
+		if (account.getOfficers().isCommandingStaff()) {
+			bonus += (int) Math.floor(baseProduced * 0.02);
+		}
+		return bonus;
+	}
+
+	/**
+	 * @param account The account
+	 * @param planet The planet
+	 * @param producer The energy producer to solve for
+	 * @param minEnergy The minimum net energy the planet must have
+	 * @return The minimum amount of energy that the given producer must contribute for the planet to have the given net energy, given
+	 *         the planet's other producers and consumers, or -1 if no amount would be enough
+	 */
+	protected int getRequiredEnergyProduction(Account account, Planet planet, ProductionSource producer, int minEnergy) {
+		ProductionBuffer energy = getProduction(account, planet, ResourceType.Energy, 1, new ProductionBuffer());
+		int otherBase = energy.get(ProductionSource.Solar) + energy.get(ProductionSource.Fusion) + energy.get(ProductionSource.Satellite)
+			- energy.get(producer);
+		long required = (long) minEnergy + energy.getTotalConsumption();
+		return invert(produced -> {
+			int base = otherBase + produced;
+			return base + getEnergyBonus(account, planet, base);
+		}, required);
+	}
+
+	/**
+	 * @param fn A non-decreasing function of a non-negative integer
+	 * @param target The target value
+	 * @return The smallest x &ge; 0 for which <code>fn(x)&ge;target</code>, or -1 if there is no such x in the positive int range
+	 */
+	protected static int invert(IntUnaryOperator fn, long target) {
+		if (fn.applyAsInt(0) >= target) {
+			return 0;
+		}
+		// Gallop to find an upper bound, then binary search below it
+		int high = 1;
+		while (fn.applyAsInt(high) < target) {
+			if (high >= (1 << 30)) {
+				return -1;
+			}
+			high <<= 1;
+		}
+		int low = high >> 1; // fn(low) < target
+		while (high - low > 1) {
+			int mid = (low + high) >>> 1;
+			if (fn.applyAsInt(mid) >= target) {
+				high = mid;
+			} else {
+				low = mid;
+			}
+		}
+		return high;
+	}
+
+	@Override
+	public int getRequiredSolarPlant(Account account, Planet planet, int minEnergy) {
+		int required = getRequiredEnergyProduction(account, planet, ProductionSource.Solar, minEnergy);
+		if (required <= 0) {
+			return required;
+		}
+		int utilization = planet.getSolarPlantUtilization();
+		return invert(level -> getSolarEnergy(level, utilization), required);
+	}
+
+	@Override
+	public int getRequiredFusionReactor(Account account, Planet planet, int minEnergy) {
+		int required = getRequiredEnergyProduction(account, planet, ProductionSource.Fusion, minEnergy);
+		if (required <= 0) {
+			return required;
+		}
+		int utilization = planet.getFusionReactorUtilization();
+		return invert(level -> getFusionEnergy(account, level, utilization), required);
+	}
+
+	@Override
+	public int getRequiredSatellites(Account account, Planet planet, int minEnergy) {
+		int required = getRequiredEnergyProduction(account, planet, ProductionSource.Satellite, minEnergy);
+		if (required <= 0) {
+			return required;
+		}
+		int satEnergy = getSatelliteEnergy(account, planet);
+		int utilization = planet.getSolarSatelliteUtilization();
+		if (satEnergy <= 0 || utilization <= 0) {
+			return -1;
+		}
+		// Satellite energy is linear, so solve directly and then correct for rounding
+		int satellites = (int) Math.ceil(required * 100.0 / satEnergy / utilization);
+		while (satellites > 0 && getSatelliteEnergy(satEnergy, satellites - 1, utilization) >= required) {
+			satellites--;
+		}
+		while (getSatelliteEnergy(satEnergy, satellites, utilization) < required) {
+			satellites++;
+		}
+		return satellites;
 	}
 
 	protected int getMineEnergy(MineProduction production, int level, int utilization) {
-		return (int) Math.floor(production.energyMultiplier * level * utilization / 100.0 * Math.pow(1.1, level));
+		return (int) Math.floor(production.energyMultiplier * level * utilization / 100.0 * pow11(level));
 	}
 
 	protected double getSlotProductionMultiplier(Account account, Planet planet, ResourceType resource) {
@@ -686,7 +865,7 @@ public class OGameEconomy710 implements OGameEconomyRuleSet {
 	}
 
 	@Override
-	public synchronized long getStorage(Planet planet, ResourceType resourceType) {
+	public long getStorage(Planet planet, ResourceType resourceType) {
 		int level;
 		switch (resourceType) {
 		case Metal:
@@ -701,19 +880,123 @@ public class OGameEconomy710 implements OGameEconomyRuleSet {
 		default:
 			return Long.MAX_VALUE;
 		}
+		return getStorageCapacity(planet, level);
+	}
+
+	/**
+	 * @param planet The planet
+	 * @param level The storage level
+	 * @return The capacity of a storage building of the given level on the planet
+	 */
+	protected long getStorageCapacity(Planet planet, int level) {
 		if (level < 0) {
 			throw new IndexOutOfBoundsException(level + "<0");
 		}
-		while (level >= STORAGE.size()) {
-			STORAGE.add(5 * (long) Math.floor(2.5 * Math.exp(20.0 / 33 * STORAGE.size())));
+		return (level <= MAX_TABULATED_STORAGE ? STORAGE[level] : computeStorage(level)) * 1000;
+	}
+
+	@Override
+	public int getRequiredStorage(Planet planet, ResourceType resourceType, long capacity) {
+		switch (resourceType) {
+		case Metal:
+		case Crystal:
+		case Deuterium:
+			break;
+		default:
+			return 0;
+		}
+		if (capacity <= getStorageCapacity(planet, 0)) {
+			return 0;
 		}
-		return STORAGE.get(level).longValue() * 1000;
+		// Invert capacity=5000*floor(2.5*e^(20*level/33)), then correct for rounding and any version-specific multipliers
+		int level = Math.max(0, (int) Math.ceil(Math.log(capacity / 12_500.0) * 33 / 20));
+		while (level > 0 && getStorageCapacity(planet, level - 1) >= capacity) {
+			level--;
+		}
+		while (getStorageCapacity(planet, level) < capacity) {
+			level++;
+		}
+		return level;
 	}
 
 	@Override
 	public List<Requirement> getRequirements(AccountUpgradeType target) {
-		CostDescrip cost = COST_DESCRIPS.get(target);
-		return cost.requirements.isEmpty() ? cost.requirements : Collections.unmodifiableList(cost.requirements);
+		return COST_DESCRIPS.get(target).requirements;
+	}
+
+	@Override
+	public List<Requirement> getRequirementClosure(AccountUpgradeType target) {
+		Map<AccountUpgradeType, List<Requirement>> closures = theRequirementClosures;
+		if (closures == null) {
+			closures = new EnumMap<>(AccountUpgradeType.class);
+			for (AccountUpgradeType type : AccountUpgradeType.values()) {
+				closures.put(type, compileRequirements(type));
+			}
+			theRequirementClosures = closures;
+		}
+		return closures.get(target);
+	}
+
+	private List<Requirement> compileRequirements(AccountUpgradeType target) {
+		int[] levels = new int[AccountUpgradeType.values().length];
+		List<AccountUpgradeType> order = new ArrayList<>();
+		addRequirements(target, levels, order, EnumSet.of(target));
+		if (order.isEmpty()) {
+			return Collections.emptyList();
+		}
+		Requirement[] closure = new Requirement[order.size()];
+		for (int i = 0; i < closure.length; i++) {
+			AccountUpgradeType type = order.get(i);
+			closure[i] = new Requirement(type, levels[type.ordinal()]);
+		}
+		return Collections.unmodifiableList(Arrays.asList(closure));
+	}
+
+	/** Depth-first, adding each requirement to the order after its own requirements */
+	private void addRequirements(AccountUpgradeType type, int[] levels, List<AccountUpgradeType> order, Set<AccountUpgradeType> visited) {
+		for (Requirement req : getRequirements(type)) {
+			levels[req.type.ordinal()] = Math.max(levels[req.type.ordinal()], req.level);
+			if (visited.add(req.type)) {
+				addRequirements(req.type, levels, order, visited);
+				order.add(req.type);
+			}
+		}
+	}
+
+	/** The highest level for which the resource costs of building and research upgrades are memoized */
+	public static final int MAX_CACHED_LEVEL = 50;
+
+	/**
+	 * Memoized resource costs of building and research upgrades, one for each upgrade type, created as needed. A racing thread may
+	 * create a duplicate table, which is harmless, and the tables' final fields guarantee that any thread that sees one sees all of it.
+	 */
+	private final CostTable[] theCostTables = new CostTable[AccountUpgradeType.values().length];
+
+	/**
+	 * The level-dependent part of the cost of upgrading a building or research between any two levels up to {@link #MAX_CACHED_LEVEL}.
+	 * The build time depends on the body and the universe speed, so it is not cached here. Instead, the last cost object created for
+	 * each entry is kept and re-used whenever a later request comes out to the same time, so a change in speed or body levels just
+	 * causes a miss.
+	 */
+	static class CostTable {
+		/** The metal, crystal, deuterium, and energy cost for each (from, to) entry */
+		final long[] resources;
+		final UpgradeCost[] costs;
+
+		CostTable(AccountUpgradeType upgrade, CostDescrip cost) {
+			int entries = (MAX_CACHED_LEVEL + 1) * (MAX_CACHED_LEVEL + 1);
+			resources = new long[entries * 4];
+			costs = new UpgradeCost[entries];
+			for (int from = 0; from < MAX_CACHED_LEVEL; from++) {
+				for (int to = from + 1; to <= MAX_CACHED_LEVEL; to++) {
+					computeResources(upgrade, cost, from, to, 0, resources, getIndex(from, to) * 4);
+				}
+			}
+		}
+
+		static int getIndex(int fromLevel, int toLevel) {
+			return fromLevel * (MAX_CACHED_LEVEL + 1) + toLevel;
+		}
 	}
 
 	@Override
@@ -722,36 +1005,56 @@ public class OGameEconomy710 implements OGameEconomyRuleSet {
 			return UpgradeCost.ZERO;
 		}
 		CostDescrip cost = COST_DESCRIPS.get(upgrade);
+		if (upgrade.type != UpgradeType.ShipyardItem && fromLevel >= 0 && fromLevel < toLevel && toLevel <= MAX_CACHED_LEVEL) {
+			CostTable table = theCostTables[upgrade.ordinal()];
+			if (table == null) {
+				table = new CostTable(upgrade, cost);
+				theCostTables[upgrade.ordinal()] = table;
+			}
+			int index = CostTable.getIndex(fromLevel, toLevel);
+			long[] res = table.resources;
+			int r = index * 4;
+			long seconds = getUpgradeTime(account, planetOrMoon, upgrade, res[r], res[r + 1]);
+			UpgradeCost upgradeCost = table.costs[index];
+			if (upgradeCost == null || upgradeCost.getUpgradeTime().getSeconds() != seconds) {
+				upgradeCost = createCost(upgrade, cost, res[r], res[r + 1], res[r + 2], res[r + 3], seconds);
+				table.costs[index] = upgradeCost;
+			}
+			return upgradeCost;
+		}
 		long[] resAmounts = new long[4];
-		resAmounts[0] = cost.baseMetal;
-		resAmounts[1] = cost.baseCrystal;
-		resAmounts[2] = cost.baseDeuterium;
-		resAmounts[3] = cost.baseEnergy;
-		char t = 0;
+		computeResources(upgrade, cost, fromLevel, toLevel, toLevel < fromLevel ? account.getResearch().getIon() : 0, resAmounts, 0);
+		long seconds = getUpgradeTime(account, planetOrMoon, upgrade, resAmounts[0], resAmounts[1]);
+		return createCost(upgrade, cost, resAmounts[0], resAmounts[1], resAmounts[2], resAmounts[3], seconds);
+	}
+
+	static void computeResources(AccountUpgradeType upgrade, CostDescrip cost, int fromLevel, int toLevel, int ionLevel,
+		long[] resAmounts, int offset) {
+		resAmounts[offset] = cost.baseMetal;
+		resAmounts[offset + 1] = cost.baseCrystal;
+		resAmounts[offset + 2] = cost.baseDeuterium;
+		resAmounts[offset + 3] = cost.baseEnergy;
 		switch (upgrade.type) {
 		case Building:
 		case Research:
-			double resMult = 1;
-			t = upgrade.type.name().charAt(0);
-			resMult = Math.pow(cost.resourceExponent, Math.min(fromLevel, toLevel))
+			double resMult = Math.pow(cost.resourceExponent, Math.min(fromLevel, toLevel))
 				* ((1 - Math.pow(cost.resourceExponent, Math.abs(toLevel - fromLevel))) / (1 - cost.resourceExponent));
 			if (toLevel < fromLevel) {
-				resMult = resMult / cost.resourceExponent * Math.max(1 - account.getResearch().getIon() * 0.04, 0);
+				resMult = resMult / cost.resourceExponent * Math.max(1 - ionLevel * 0.04, 0);
 			}
 			for (int i = 0; i < 3; i++) {
-				resAmounts[i] = Math.round(resAmounts[i] * resMult);
+				resAmounts[offset + i] = Math.round(resAmounts[offset + i] * resMult);
 			}
 			break;
 		case ShipyardItem:
-			t = 's';
 			if (toLevel < fromLevel) {
 				resMult = (toLevel - fromLevel) * 0.35; // Scrapping
 				for (int i = 0; i < 3; i++) {
-					resAmounts[i] = -Math.round(resAmounts[i] * resMult);
+					resAmounts[offset + i] = -Math.round(resAmounts[offset + i] * resMult);
 				}
 			} else {
 				for (int i = 0; i < 3; i++) {
-					resAmounts[i] = Math.round(resAmounts[i] * (toLevel - fromLevel));
+					resAmounts[offset + i] = Math.round(resAmounts[offset + i] * (toLevel - fromLevel));
 				}
 			}
 			break;
@@ -759,26 +1062,29 @@ public class OGameEconomy710 implements OGameEconomyRuleSet {
 		if (cost.energyExponent > 1 && toLevel > fromLevel) {
 			double mult = Math.pow(cost.energyExponent, Math.min(fromLevel, toLevel))
 				* ((1 - Math.pow(cost.energyExponent, Math.abs(toLevel - fromLevel))) / (1 - cost.energyExponent));
-			resAmounts[3] = (long) Math.floor(resAmounts[3] * mult);
+			resAmounts[offset + 3] = (long) Math.floor(resAmounts[offset + 3] * mult);
 		}
-		long seconds = getUpgradeTime(account, planetOrMoon, upgrade, resAmounts);
+	}
+
+	private static UpgradeCost createCost(AccountUpgradeType upgrade, CostDescrip cost, long metal, long crystal, long deuterium,
+		long energy, long seconds) {
 		Duration time = Duration.ofSeconds(seconds);
 		if (upgrade.type == UpgradeType.Research) {
-			return UpgradeCost.of(t, resAmounts[0], resAmounts[1], resAmounts[2], (int) resAmounts[3], time, 0, 1, 0);
+			return UpgradeCost.of('r', metal, crystal, deuterium, (int) energy, time, 0, 1, 0);
 		} else {
-			return UpgradeCost.of(t, resAmounts[0], resAmounts[1], resAmounts[2], (int) resAmounts[3], time, cost.ecoWeight, 0,
-				cost.milWeight);
+			return UpgradeCost.of(upgrade.type == UpgradeType.Building ? 'b' : 's', metal, crystal, deuterium, (int) energy, time,
+				cost.ecoWeight, 0, cost.milWeight);
 		}
 	}
 
-	protected long getUpgradeTime(Account account, RockyBody planetOrMoon, AccountUpgradeType upgrade, long [] resAmounts){
+	protected long getUpgradeTime(Account account, RockyBody planetOrMoon, AccountUpgradeType upgrade, long metal, long crystal) {
 		double hours = 0;
 		switch (upgrade.type) {
 		case Building:
 			if (planetOrMoon == null) {
 				return 0; //Null planet means they don't care about the time
 			}
-			hours = (resAmounts[0] + resAmounts[1]) / 2500 / account.getUniverse().getEconomySpeed();
+			hours = (metal + crystal) / 2500 / account.getUniverse().getEconomySpeed();
 			hours /= (1 + planetOrMoon.getRoboticsFactory());
 			int nanite = planetOrMoon.getBuildingLevel(BuildingType.NaniteFactory);
 			if (nanite > 0) {
@@ -786,7 +1092,7 @@ public class OGameEconomy710 implements OGameEconomyRuleSet {
 			}
 			break;
 		case Research:
-			hours = (resAmounts[0] + resAmounts[1]) / 1000 / account.getUniverse().getResearchSpeed();
+			hours = (metal + crystal) / 1000 / account.getUniverse().getResearchSpeed();
 			int labLevels=getTotalLabLevels(account, planetOrMoon);
 			hours/=labLevels;
 			break;
@@ -794,7 +1100,7 @@ public class OGameEconomy710 implements OGameEconomyRuleSet {
 			if (planetOrMoon == null) {
 				return 0; //Null planet means they don't care about the time
 			}
-			hours = (resAmounts[0] + resAmounts[1]) / 2500 / account.getUniverse().getEconomySpeed();
+			hours = (metal + crystal) / 2500 / account.getUniverse().getEconomySpeed();
 			hours /= (1 + planetOrMoon.getShipyard());
 			nanite = planetOrMoon.getBuildingLevel(BuildingType.NaniteFactory);
 			if (nanite > 0) {
@@ -819,17 +1125,21 @@ public class OGameEconomy710 implements OGameEconomyRuleSet {
 		int levels = planetOrMoon.getBuildingLevel(BuildingType.ResearchLab);
 		int irn = account.getResearch().getIntergalacticResearchNetwork();
 		if (irn > 0) {
-			SortedTreeList<Integer> labLevels = new SortedTreeList<>(false, (i1, i2) -> -Integer.compare(i1, i2));
+			// The app doesn't actually care where the research starts from, so just use the best case: the highest labs of any planets
+			// This is called for every research cost, so pick the best labs level by level instead of sorting them
+			int maxLab = 0;
 			for (Planet planet : account.getPlanets().getValues()) {
-				// if (planet != planetOrMoon) { The app doesn't actually care where the research starts from, so just use the best case
-					labLevels.add(planet.getBuildingLevel(BuildingType.ResearchLab));
-				// }
+				maxLab = Math.max(maxLab, planet.getBuildingLevel(BuildingType.ResearchLab));
 			}
 			int linkedLabs = 0;
-			for (Integer lab : labLevels) {
-				levels += lab;
-				if (++linkedLabs == irn) {
-					break;
+			for (int lab = maxLab; lab > 0 && linkedLabs < irn; lab--) {
+				for (Planet planet : account.getPlanets().getValues()) {
+					if (planet.getBuildingLevel(BuildingType.ResearchLab) == lab) {
+						levels += lab;
+						if (++linkedLabs == irn) {
+							break;
+						}
+					}
 				}
 			}
 		}
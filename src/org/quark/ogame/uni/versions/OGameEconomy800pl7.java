@@ -7,8 +7,8 @@ import org.quark.ogame.uni.ResourceType;
 
 public class OGameEconomy800pl7 extends OGameEconomy750 {
 	@Override
-	public synchronized long getStorage(Planet planet, ResourceType resourceType) {
-		long storage = super.getStorage(planet, resourceType);
+	protected long getStorageCapacity(Planet planet, int level) {
+		long storage = super.getStorageCapacity(planet, level);
 		if (planet.getAccount().getAllianceClass() != null) {
 			switch (planet.getAccount().getAllianceClass()) {
 			case Trader:
@@ -24,16 +24,17 @@ public class OGameEconomy800pl7 extends OGameEconomy750 {
 	}
 
 	@Override
-	public Production getProduction(Account account, Planet planet, ResourceType resourceType, double energyFactor) {
-		Production production = super.getProduction(account, planet, resourceType, energyFactor);
+	public ProductionBuffer getProduction(Account account, Planet planet, ResourceType resourceType, double energyFactor,
+		ProductionBuffer production) {
+		super.getProduction(account, planet, resourceType, energyFactor, production);
 		if (account.getAllianceClass() == AllianceClass.Trader) {
 			switch (resourceType) {
 			case Metal:
 			case Crystal:
 			case Deuterium:
-				int mineProduction = production.byType.get(ProductionSource.getMine(resourceType))//
-					+ production.byType.get(ProductionSource.Slot);
-				production = production.plus((int) Math.round(mineProduction * 0.05), ProductionSource.Trader);
+				int mineProduction = production.get(ProductionSource.getMine(resourceType))//
+					+ production.get(ProductionSource.Slot);
+				production.plus(ProductionSource.Trader, (int) Math.round(mineProduction * 0.05));
 				break;
 			case Energy:
 				long energyProduction = 0;
@@ -44,16 +45,25 @@ public class OGameEconomy800pl7 extends OGameEconomy750 {
 					case Satellite:
 					case Fusion:
 					case Slot:
-						energyProduction += production.byType.getOrDefault(src, 0);
+						energyProduction += production.get(src);
 						break;
 					default:
 						break;
 					}
 				}
-				production = production.plus((int) Math.round(energyProduction * 0.05), ProductionSource.Trader);
+				production.plus(ProductionSource.Trader, (int) Math.round(energyProduction * 0.05));
 				break;
 			}
 		}
 		return production;
 	}
+
+	@Override
+	protected int getEnergyBonus(Account account, Planet planet, int baseProduced) {
+		int bonus = super.getEnergyBonus(account, planet, baseProduced);
+		if (account.getAllianceClass() == AllianceClass.Trader) {
+			bonus += (int) Math.round(baseProduced * 0.05);
+		}
+		return bonus;
+	}
 }
@@ -23,6 +23,7 @@ import org.quark.ogame.uni.ResearchType;
 import org.quark.ogame.uni.ShipyardItemType;
 import org.quark.ogame.uni.Universe;
 
+/** The fleet rules for OGame version 7.1.0. Immutable after construction, and therefore thread-safe. */
 public class OGameFleet710 implements FleetRules {
 	public static class AccountClassBonus {
 		final AccountClass clazz;
@@ -282,8 +283,8 @@ public class OGameFleet710 implements FleetRules {
 
 	private static int getDistance(int source, int dest, int max, boolean circular) {
 		int dist = Math.abs(dest - source);
-		if (dist >= max - 1) {
-			dist = max - dist;
+		if (circular && dist > max - dist) {
+			dist = max - dist; // Shorter to go around the other way
 		}
 		return dist;
 	}
@@ -337,10 +338,13 @@ public class OGameFleet710 implements FleetRules {
 
 	@Override
 	public double getFuelConsumption(ShipyardItemType type, Account account, int distance, Duration flightTime) {
-		int maxSpeed = getSpeed(type, account, false, false);
+		return getFuelConsumption(getSpeed(type, account, false, false), getFuelConsumption(type, account), distance, flightTime);
+	}
+
+	@Override
+	public double getFuelConsumption(int maxSpeed, int fuelRate, int distance, Duration flightTime) {
 		double speed = 35000 / (flightTime.getSeconds() - 10.0) * Math.sqrt(distance * 10.0 / maxSpeed);
 		double speedOver10Plus1 = speed / 10.0 + 1;
-		int rate = getFuelConsumption(type, account);
-		return rate * distance / 35000.0 * speedOver10Plus1 * speedOver10Plus1;
+		return fuelRate * distance / 35000.0 * speedOver10Plus1 * speedOver10Plus1;
 	}
 }
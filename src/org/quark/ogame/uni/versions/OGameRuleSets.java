@@ -0,0 +1,17 @@
+package org.quark.ogame.uni.versions;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.quark.ogame.uni.OGameRuleSet;
+
+/** The rule sets of all supported OGame versions */
+public class OGameRuleSets {
+	/** Every supported rule set, oldest first. Rule sets are thread-safe, so these instances may be shared. */
+	public static final List<OGameRuleSet> ALL = Collections.unmodifiableList(Arrays.asList(//
+		new OGameRuleSet710(), new OGameRuleSet711(), new OGameRuleSet740(), new OGameRuleSet750(), new OGameRuleSet800pl7()));
+
+	private OGameRuleSets() {
+	}
+}